@@ -0,0 +1,85 @@
+package swarm.pso.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import swarm.pso.model.DoublePSOFunction;
+import swarm.pso.structures.SwarmState;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+import swarm.pso.test.Functions;
+
+//Runs the benchmarks with JMH's command line options, always adding the gc profiler so every result comes with its
+//allocation rate (gc.alloc.rate, and gc.alloc.rate.norm per operation) next to its throughput.
+//The rest of the class builds the functions, configurations and swarms the benchmarks share.
+public class Benchmarks {
+	// The drivers' usual weights
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+	public static final int FDR_CANDIDATES = 16;
+
+	public static final long SEED = 7100555322108534535L;
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	// sphere, ackley or rosenbrock of any dimension, or table, which only has 2
+	public static DoublePSOFunction function(String name, int dimensions) {
+		if (name.equals("sphere")) {
+			return new Functions.Sphere(dimensions);
+		}
+		else if (name.equals("ackley")) {
+			return new Functions.Ackley(dimensions);
+		}
+		else if (name.equals("rosenbrock")) {
+			return new Functions.Rosenbrock(dimensions);
+		}
+		else if (name.equals("table")) {
+			return new Functions.TableFunc();
+		}
+		throw new IllegalArgumentException("Unknown function " + name);
+	}
+
+	public static SwarmConfiguration configuration(DoublePSOFunction function, int particles, int iterations) {
+		List<Double> maximumVelocity = new ArrayList<Double>();
+		for (int d = 0; d < function.getDimensions(); d++) {
+			maximumVelocity.add(Math.abs(function.getUpperBounds().get(d) - function.getLowerBounds().get(d)));
+		}
+		FunctionConfiguration functionConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		return new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT, FDR_WEIGHT, particles,
+				iterations, maximumVelocity, functionConf);
+	}
+
+	// A swarm scattered over the function's domain, with each particle's first position as its personal best
+	public static SwarmState randomSwarm(DoublePSOFunction function, int particles, Random rand) {
+		SwarmState swarm = new SwarmState(particles, function.getDimensions());
+		for (int p = 0; p < particles; p++) {
+			int offset = swarm.offset(p);
+			for (int d = 0; d < function.getDimensions(); d++) {
+				double lower = function.getLowerBounds().get(d);
+				double upper = function.getUpperBounds().get(d);
+				swarm.getPositions()[offset + d] = lower + rand.nextDouble() * (upper - lower);
+				swarm.getVelocities()[offset + d] = (rand.nextDouble() - 0.5) * (upper - lower);
+			}
+			swarm.getValues()[p] = function.function(swarm.getPositions(), offset);
+			swarm.updateBest(p);
+		}
+		return swarm;
+	}
+}
@@ -0,0 +1,79 @@
+package swarm.pso.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import swarm.pso.model.DoublePSOFunction;
+import swarm.pso.random.Xoshiro256Random;
+import swarm.pso.service.FitnessDistanceIndex;
+import swarm.pso.service.FitnessDistanceSearch;
+import swarm.pso.service.NeighbourhoodFitnessDistanceSearch;
+import swarm.pso.service.SampledFitnessDistanceSearch;
+import swarm.pso.structures.SwarmState;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
+
+//The search for each dimension's best fitness-distance-ratio particle, one particle's search per operation on an
+//Ackley swarm, with each FDR strategy. The exact search grows with the swarm, the others with FDR_CANDIDATES.
+//The neighbourhood index is built once, KernelBenchmark.rebuild (in swarm.pso.service) times rebuilding it.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FdrSearchBenchmark {
+	@State(Scope.Thread)
+	public static class Search {
+		@Param({ "100", "1000", "10000" })
+		public int particles;
+
+		@Param({ "10", "30" })
+		public int dimensions;
+
+		@Param({ "EXACT", "SAMPLED", "NEIGHBOURHOOD" })
+		public FdrStrategy strategy;
+
+		FitnessDistanceSearch search;
+		int[] selections;
+		int next = 0; // The particle to search for
+
+		@Setup
+		public void setup() {
+			DoublePSOFunction function = Benchmarks.function("ackley", dimensions);
+			Xoshiro256Random rand = new Xoshiro256Random(Benchmarks.SEED);
+			SwarmState swarm = Benchmarks.randomSwarm(function, particles, rand);
+			switch (strategy) {
+			case EXACT:
+				search = new FitnessDistanceSearch(swarm);
+				break;
+			case SAMPLED:
+				search = new SampledFitnessDistanceSearch(swarm, Benchmarks.FDR_CANDIDATES, rand);
+				break;
+			case NEIGHBOURHOOD:
+				FitnessDistanceIndex index = new FitnessDistanceIndex(swarm, Benchmarks.FDR_CANDIDATES);
+				index.rebuild();
+				search = new NeighbourhoodFitnessDistanceSearch(swarm, index, Benchmarks.FDR_CANDIDATES);
+				break;
+			}
+			selections = new int[dimensions];
+		}
+	}
+
+	@Benchmark
+	public int[] search(Search s) {
+		int particle = s.next;
+		s.next = particle + 1 == s.particles ? 0 : particle + 1;
+		s.search.search(particle, s.selections);
+		return s.selections;
+	}
+}
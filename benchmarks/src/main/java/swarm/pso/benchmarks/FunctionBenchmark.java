@@ -0,0 +1,83 @@
+package swarm.pso.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import swarm.pso.model.DoublePSOFunction;
+
+//The objective functions on their own, in evaluations per second. Each operation evaluates a swarm of POINTS
+//positions one at a time, as the updates do. There is no batch benchmark, no bundled function overrides the batch
+//call, so it would only time the same per-point loop.
+//The table function only has 2 dimensions, so it has a benchmark of its own without the dimensions parameter.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark {
+	public static final int POINTS = 1024;
+
+	@State(Scope.Thread)
+	public static class Points {
+		@Param({ "sphere", "ackley", "rosenbrock" })
+		public String function;
+
+		@Param({ "2", "10", "30", "100" })
+		public int dimensions;
+
+		DoublePSOFunction objective;
+		double[] positions;
+
+		@Setup
+		public void setup() {
+			objective = Benchmarks.function(function, dimensions);
+			positions = Benchmarks.randomSwarm(objective, POINTS, new Random(Benchmarks.SEED)).getPositions();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TablePoints {
+		DoublePSOFunction objective;
+		double[] positions;
+
+		@Setup
+		public void setup() {
+			objective = Benchmarks.function("table", 2);
+			positions = Benchmarks.randomSwarm(objective, POINTS, new Random(Benchmarks.SEED)).getPositions();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double single(Points points) {
+		return evaluate(points.objective, points.positions);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double table(TablePoints points) {
+		return evaluate(points.objective, points.positions);
+	}
+
+	private static double evaluate(DoublePSOFunction objective, double[] positions) {
+		int dimensions = objective.getDimensions();
+		double sum = 0;
+		for (int p = 0; p < POINTS; p++) {
+			sum += objective.function(positions, p * dimensions);
+		}
+		return sum;
+	}
+}
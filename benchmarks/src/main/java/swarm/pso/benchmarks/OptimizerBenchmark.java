@@ -0,0 +1,112 @@
+package swarm.pso.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.DoublePSOFunction;
+import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.service.SwarmOptimization;
+import swarm.pso.service.unused.PrototypeConcurrentOptimization;
+import swarm.pso.service.unused.WrapAllOptimization;
+import swarm.pso.service.unused.WrapperOptimization;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Whole runs of every optimizer on a 30 dimensional Ackley function, in iterations per second. Each operation is a
+//run of ITERATIONS iterations from a swarm and log made fresh before it, so nothing carries over between runs.
+//Their set up is not timed, but the gc profiler counts what it allocates, so gc.alloc.rate.norm is per run
+//divided by ITERATIONS, logging included.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OptimizerBenchmark {
+	public static final int ITERATIONS = 20;
+	public static final int DIMENSIONS = 30;
+
+	@State(Scope.Thread)
+	public static class Sequential {
+		@Param({ "100", "1000" })
+		public int particles;
+
+		SwarmOptimization optimization;
+
+		@Setup(Level.Invocation)
+		public void setup() {
+			SwarmConfiguration config = configuration(particles);
+			optimization = new SequentialOptimization(config, new Random(Benchmarks.SEED), new Logging(config));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Concurrent {
+		@Param({ "particle-parallel", "prototype", "wrapper", "wrap-all" })
+		public String optimizer;
+
+		@Param({ "100", "1000" })
+		public int particles;
+
+		@Param({ "1", "2", "4" })
+		public int threads;
+
+		SwarmOptimization optimization;
+
+		@Setup(Level.Invocation)
+		public void setup() {
+			SwarmConfiguration swarmConfig = configuration(particles);
+			ConcurrentSwarmConfiguration config = new ConcurrentSwarmConfiguration(swarmConfig, threads);
+			Random rand = new Random(Benchmarks.SEED);
+			Logging log = new Logging(config);
+			if (optimizer.equals("particle-parallel")) {
+				optimization = new ParticleParallelOptimization(config, rand, log);
+			}
+			else if (optimizer.equals("prototype")) {
+				optimization = new PrototypeConcurrentOptimization(config, rand, log);
+			}
+			else if (optimizer.equals("wrapper")) {
+				optimization = new WrapperOptimization(config, rand, log);
+			}
+			else if (optimizer.equals("wrap-all")) {
+				optimization = new WrapAllOptimization(config, rand, log);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown optimizer " + optimizer);
+			}
+		}
+	}
+
+	private static SwarmConfiguration configuration(int particles) {
+		DoublePSOFunction function = Benchmarks.function("ackley", DIMENSIONS);
+		return Benchmarks.configuration(function, particles, ITERATIONS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ITERATIONS)
+	public List<Double> sequential(Sequential s) {
+		return s.optimization.optimize();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ITERATIONS)
+	public List<Double> concurrent(Concurrent s) {
+		return s.optimization.optimize();
+	}
+}
@@ -0,0 +1,97 @@
+package swarm.pso.service;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import swarm.pso.benchmarks.Benchmarks;
+import swarm.pso.model.DoublePSOFunction;
+import swarm.pso.random.Randoms;
+import swarm.pso.random.Xoshiro256Random;
+import swarm.pso.structures.SwarmState;
+
+//The per-particle kernels outside the objective function, one particle per operation on an Ackley swarm.
+//velocity calls SequentialOptimization's own updateVelocity and updatePosition, which are package-private, hence
+//the package. Each particle's FDR particles come from a sampled search made once up front, FdrSearchBenchmark
+//covers the search itself.
+//rebuild is the neighbourhood strategy's index, rebuilt once per iteration, so one operation is the whole swarm.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+	public static final double INERTIA = 0.7;
+
+	@State(Scope.Thread)
+	public static class Swarm {
+		@Param({ "100", "1000", "10000" })
+		public int particles;
+
+		@Param({ "10", "30" })
+		public int dimensions;
+
+		SwarmState swarm;
+		FitnessDistanceIndex index;
+		int[][] fdrSelections; // The FDR particle of each particle and dimension
+		double[] bestPosition;
+		double[] lowerBounds;
+		double[] upperBounds;
+		double[] maximumVelocity;
+		double[] draws;
+		Random rand;
+		int next = 0; // The particle to update
+
+		@Setup
+		public void setup() {
+			DoublePSOFunction function = Benchmarks.function("ackley", dimensions);
+			rand = new Xoshiro256Random(Benchmarks.SEED);
+			swarm = Benchmarks.randomSwarm(function, particles, rand);
+			index = new FitnessDistanceIndex(swarm, Benchmarks.FDR_CANDIDATES);
+			FitnessDistanceSearch search = new SampledFitnessDistanceSearch(swarm, Benchmarks.FDR_CANDIDATES, rand);
+			fdrSelections = new int[particles][dimensions];
+			for (int p = 0; p < particles; p++) {
+				search.search(p, fdrSelections[p]);
+			}
+			bestPosition = new double[dimensions];
+			swarm.copyPosition(0, bestPosition);
+			lowerBounds = new double[dimensions];
+			upperBounds = new double[dimensions];
+			maximumVelocity = new double[dimensions];
+			for (int d = 0; d < dimensions; d++) {
+				lowerBounds[d] = function.getLowerBounds().get(d);
+				upperBounds[d] = function.getUpperBounds().get(d);
+				maximumVelocity[d] = upperBounds[d] - lowerBounds[d];
+			}
+			draws = new double[3 * dimensions];
+		}
+	}
+
+	@Benchmark
+	public double[] velocity(Swarm s) {
+		int particle = s.next;
+		s.next = particle + 1 == s.particles ? 0 : particle + 1;
+		Randoms.fill(s.rand, s.draws, 0, s.draws.length);
+		SequentialOptimization.updateVelocity(s.swarm, particle, INERTIA, s.draws, s.fdrSelections[particle],
+				Benchmarks.SELF_WEIGHT, Benchmarks.BEST_WEIGHT, Benchmarks.FDR_WEIGHT, s.bestPosition, s.maximumVelocity);
+		SequentialOptimization.updatePosition(s.swarm, particle, s.lowerBounds, s.upperBounds);
+		return s.swarm.getPositions();
+	}
+
+	@Benchmark
+	public FitnessDistanceIndex rebuild(Swarm s) {
+		s.index.rebuild();
+		return s.index;
+	}
+}
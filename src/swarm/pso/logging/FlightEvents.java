@@ -0,0 +1,249 @@
+package swarm.pso.logging;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Java Flight Recorder events for the optimizers' hot paths, so a slow run can be lined up against GC and scheduling
+//in the same recording. The tree builds for Java 7, so the event types are made at run time with jdk.jfr.EventFactory,
+//through reflection, and on a JVM without JFR they are simply never enabled.
+//Making the types is slow, so it waits until the JVM's flight recorder starts. After that a type is enabled while any
+//recording asks for it, and begin() returns null otherwise: code that is not being recorded pays a volatile read.
+//Each type has a default threshold, and JFR drops events shorter than it before their fields are set. Override a
+//default with -Dswarm.pso.jfr.<type>.threshold=<duration>, for example -Dswarm.pso.jfr.BarrierWait.threshold=0ms, or
+//with the recording's own settings. -Dswarm.pso.jfr=false turns the events off altogether.
+//FlightRecordingReport summarizes a recording of these events.
+public final class FlightEvents {
+	public static final String PREFIX = "swarm.pso.";
+	public static final String CATEGORY = "Swarm PSO";
+
+	public static final Type ITERATION = new Type("Iteration", "Iteration", "One synchronous iteration of the swarm",
+			"0 ms", new Field("iteration", int.class, "Iteration"), new Field("evaluations", long.class, "Evaluations"),
+			new Field("bestValue", double.class, "Best Value"));
+	public static final Type BARRIER_WAIT = new Type("BarrierWait", "Barrier Wait",
+			"A thread waiting for the others at one of ParticleParallelOptimization's barriers", "1 ms",
+			new Field("iteration", int.class, "Iteration"), new Field("thread", int.class, "Worker Thread"),
+			new Field("barrier", String.class, "Barrier"));
+	public static final Type EVALUATION_BATCH = new Type("EvaluationBatch", "Evaluation Batch",
+			"A range of particles evaluated a batch at a time", "1 ms",
+			new Field("firstParticle", int.class, "First Particle"), new Field("particles", int.class, "Particles"));
+	public static final Type FDR_SEARCH = new Type("FdrSearch", "FDR Search",
+			"Fitness-distance-ratio searches for a range of particles, or the rebuild of the neighbourhood index. The " +
+			"event spans the range's moves, searchTime is the part spent searching", "1 ms",
+			new Field("particles", int.class, "Particles"), new Field("searchTime", long.class, "Search Time", true),
+			new Field("strategy", String.class, "Strategy"));
+	public static final Type LOG_FLUSH = new Type("LogFlush", "Log Flush",
+			"An iteration's bookkeeping copied into the log, or the log written to files", "0 ms",
+			new Field("target", String.class, "Target"));
+
+	private static final List<Type> TYPES = Arrays.asList(ITERATION, BARRIER_WAIT, EVALUATION_BATCH, FDR_SEARCH, LOG_FLUSH);
+
+	// Reflected from jdk.jfr once the recorder starts, null before that and on JVMs without it
+	private static volatile Method newEvent;
+	private static Method begin;
+	private static Method end;
+	private static Method shouldCommit;
+	private static Method set;
+	private static Method commit;
+	private static Method isEnabled;
+
+	static {
+		if (!"false".equals(System.getProperty("swarm.pso.jfr"))) {
+			listen();
+		}
+	}
+
+	private FlightEvents() {
+	}
+
+	// A field of an event type, a duration in nanoseconds if it is a timespan
+	private static class Field {
+		private final String name;
+		private final Class<?> type;
+		private final String label;
+		private final boolean timespan;
+
+		Field(String name, Class<?> type, String label) {
+			this(name, type, label, false);
+		}
+
+		Field(String name, Class<?> type, String label, boolean timespan) {
+			this.name = name;
+			this.type = type;
+			this.label = label;
+			this.timespan = timespan;
+		}
+	}
+
+	public static final class Type {
+		private final String name;
+		private final String label;
+		private final String description;
+		private final String threshold;
+		private final Field[] fields;
+
+		private Object factory; // The jdk.jfr.EventFactory, set once the recorder starts
+		private volatile boolean enabled = false;
+
+		Type(String name, String label, String description, String threshold, Field... fields) {
+			this.name = name;
+			this.label = label;
+			this.description = description;
+			this.threshold = System.getProperty("swarm.pso.jfr." + name + ".threshold", threshold);
+			this.fields = fields;
+		}
+
+		public String getName() {
+			return PREFIX + name;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		// An event that starts now, or null if no recording wants this type
+		public Event begin() {
+			if (!enabled) {
+				return null;
+			}
+			try {
+				Object event = newEvent.invoke(factory);
+				FlightEvents.begin.invoke(event);
+				return new Event(this, event);
+			} catch (ReflectiveOperationException e) {
+				enabled = false; // JFR is not behaving as expected, stop trying
+				return null;
+			}
+		}
+	}
+
+	// One event in progress. Only touch it from one thread at a time
+	public static final class Event {
+		private final Type type;
+		private final Object event;
+
+		Event(Type type, Object event) {
+			this.type = type;
+			this.event = event;
+		}
+
+		// Ends the event now and records it with its fields' values, in the order the type declares them, if it lasted
+		// long enough
+		public void commit(Object... values) {
+			try {
+				end.invoke(event);
+				if ((Boolean) shouldCommit.invoke(event)) {
+					for (int i = 0; i < values.length; i++) {
+						set.invoke(event, i, values[i]);
+					}
+					FlightEvents.commit.invoke(event);
+				}
+			} catch (ReflectiveOperationException e) {
+				type.enabled = false;
+			}
+		}
+	}
+
+	// Waits for the recorder to start. Nothing is loaded beyond the listener until it does
+	private static void listen() {
+		try {
+			Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+			Class<?> listenerType = Class.forName("jdk.jfr.FlightRecorderListener");
+			Object listener = Proxy.newProxyInstance(FlightEvents.class.getClassLoader(), new Class<?>[] { listenerType },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("recorderInitialized")) {
+								createTypes();
+							}
+							else if (method.getName().equals("recordingStateChanged")) {
+								refresh();
+							}
+							else if (method.getName().equals("hashCode")) {
+								return System.identityHashCode(proxy);
+							}
+							else if (method.getName().equals("equals")) {
+								return proxy == args[0];
+							}
+							else if (method.getName().equals("toString")) {
+								return "FlightEvents listener";
+							}
+							return null;
+						}
+					});
+			recorder.getMethod("addListener", listenerType).invoke(null, listener);
+		} catch (ReflectiveOperationException e) {
+			// No JFR on this JVM
+		} catch (RuntimeException e) {
+			// Or not allowed to use it
+		}
+	}
+
+	private static synchronized void createTypes() {
+		if (newEvent != null) {
+			return;
+		}
+		try {
+			Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+			Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+			Constructor<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class,
+					String.class, List.class);
+			Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+			Method create = eventFactory.getMethod("create", List.class, List.class);
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+			begin = event.getMethod("begin");
+			end = event.getMethod("end");
+			shouldCommit = event.getMethod("shouldCommit");
+			set = event.getMethod("set", int.class, Object.class);
+			commit = event.getMethod("commit");
+
+			for (Type type : TYPES) {
+				List<Object> annotations = new ArrayList<Object>();
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), type.getName()));
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), type.label));
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Description"), type.description));
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] { CATEGORY }));
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Threshold"), type.threshold));
+				annotations.add(annotation.newInstance(Class.forName("jdk.jfr.StackTrace"), false)); // Too costly here
+				List<Object> fields = new ArrayList<Object>();
+				for (Field field : type.fields) {
+					List<Object> fieldAnnotations = new ArrayList<Object>();
+					fieldAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), field.label));
+					if (field.timespan) {
+						fieldAnnotations.add(annotation.newInstance(Class.forName("jdk.jfr.Timespan"), "NANOSECONDS"));
+					}
+					fields.add(valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+				}
+				type.factory = create.invoke(null, annotations, fields);
+			}
+			newEvent = eventFactory.getMethod("newEvent"); // Last, it tells refresh the types are ready
+		} catch (ReflectiveOperationException e) {
+			return;
+		} catch (RuntimeException e) {
+			return;
+		}
+		refresh();
+	}
+
+	// Runs whenever a recording starts or stops, since that may change which types are wanted
+	private static synchronized void refresh() {
+		if (newEvent == null) {
+			return;
+		}
+		try {
+			Method getEventType = newEvent.getDeclaringClass().getMethod("getEventType");
+			for (Type type : TYPES) {
+				type.enabled = (Boolean) isEnabled.invoke(getEventType.invoke(type.factory));
+			}
+		} catch (ReflectiveOperationException e) {
+			for (Type type : TYPES) {
+				type.enabled = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package swarm.pso.logging;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Summarizes a flight recording of FlightEvents into a per-phase report: how often each event happened and how long
+//it took, barrier waits per thread, and the garbage collections that overlapped iterations, with the slowest
+//iterations and how much of each was spent collecting. Record with, for example,
+//	java -XX:StartFlightRecording=filename=run.jfr,settings=profile ...
+//then run this class with the recording's path. Needs a JVM with jdk.jfr, it is read through reflection like FlightEvents
+public class FlightRecordingReport {
+	public static final int SLOWEST = 10; // Iterations listed
+	public static final String GARBAGE_COLLECTION = "jdk.GarbageCollection";
+
+	private final Map<String, Summary> phases = new TreeMap<String, Summary>();
+	private final Map<String, Summary> barrierWaits = new TreeMap<String, Summary>(); // By thread and barrier
+	private final Summary fdrSearchTime = new Summary();
+	private final Summary collections = new Summary();
+	private final List<Interval> iterations = new ArrayList<Interval>();
+	private final List<Interval> pauses = new ArrayList<Interval>();
+
+	// Count, total and longest duration of one kind of event, in nanoseconds
+	private static class Summary {
+		private long count = 0;
+		private long total = 0;
+		private long max = 0;
+
+		void add(long nanos) {
+			count++;
+			total += nanos;
+			max = Math.max(max, nanos);
+		}
+	}
+
+	// An event's span in nanoseconds since the epoch
+	private static class Interval {
+		private final long start;
+		private final long end;
+		private final long label; // The iteration, for Iteration events
+		private long collecting = 0; // Nanoseconds of it spent in garbage collections
+
+		Interval(long start, long end, long label) {
+			this.start = start;
+			this.end = end;
+			this.label = label;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("usage: FlightRecordingReport <recording.jfr>");
+			System.exit(2);
+		}
+		FlightRecordingReport report = new FlightRecordingReport();
+		report.read(Paths.get(args[0]));
+		report.print(System.out);
+	}
+
+	public void read(Path recording) throws ReflectiveOperationException {
+		Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+		Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+		Method getEventType = recordedEvent.getMethod("getEventType");
+		Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+		Method getStartTime = recordedEvent.getMethod("getStartTime");
+		Method getEndTime = recordedEvent.getMethod("getEndTime");
+		Method getValue = recordedEvent.getMethod("getValue", String.class);
+		Method getEpochSecond = Class.forName("java.time.Instant").getMethod("getEpochSecond");
+		Method getNano = Class.forName("java.time.Instant").getMethod("getNano");
+
+		List<?> events = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, recording);
+		for (Object event : events) {
+			String name = (String) getName.invoke(getEventType.invoke(event));
+			if (!name.startsWith(FlightEvents.PREFIX) && !name.equals(GARBAGE_COLLECTION)) {
+				continue;
+			}
+			Object start = getStartTime.invoke(event);
+			Object end = getEndTime.invoke(event);
+			long startNanos = (Long) getEpochSecond.invoke(start) * 1000000000L + (Integer) getNano.invoke(start);
+			long endNanos = (Long) getEpochSecond.invoke(end) * 1000000000L + (Integer) getNano.invoke(end);
+			long duration = endNanos - startNanos;
+
+			if (name.equals(GARBAGE_COLLECTION)) {
+				collections.add(duration);
+				pauses.add(new Interval(startNanos, endNanos, -1));
+				continue;
+			}
+			String phase = name.substring(FlightEvents.PREFIX.length());
+			summary(phases, phase).add(duration);
+			if (name.equals(FlightEvents.ITERATION.getName())) {
+				iterations.add(new Interval(startNanos, endNanos, ((Number) getValue.invoke(event, "iteration")).intValue()));
+			}
+			else if (name.equals(FlightEvents.BARRIER_WAIT.getName())) {
+				summary(barrierWaits, String.format("thread %3d %s", ((Number) getValue.invoke(event, "thread")).intValue(),
+						getValue.invoke(event, "barrier"))).add(duration);
+			}
+			else if (name.equals(FlightEvents.FDR_SEARCH.getName())) {
+				Object searchTime = getValue.invoke(event, "searchTime"); // A Duration, as the field is a timespan
+				fdrSearchTime.add(searchTime instanceof Number ? ((Number) searchTime).longValue() :
+						(Long) searchTime.getClass().getMethod("toNanos").invoke(searchTime));
+			}
+		}
+		overlapCollections();
+	}
+
+	private static Summary summary(Map<String, Summary> summaries, String key) {
+		Summary summary = summaries.get(key);
+		if (summary == null) {
+			summary = new Summary();
+			summaries.put(key, summary);
+		}
+		return summary;
+	}
+
+	// How long each iteration spent in collections, walking both lists in order of start
+	private void overlapCollections() {
+		Comparator<Interval> byStart = new Comparator<Interval>() {
+			@Override
+			public int compare(Interval a, Interval b) {
+				return a.start < b.start ? -1 : a.start > b.start ? 1 : 0;
+			}
+		};
+		Collections.sort(iterations, byStart);
+		Collections.sort(pauses, byStart);
+		int first = 0; // The first pause that may still overlap an iteration
+		for (Interval iteration : iterations) {
+			while (first < pauses.size() && pauses.get(first).end <= iteration.start) {
+				first++;
+			}
+			for (int p = first; p < pauses.size() && pauses.get(p).start < iteration.end; p++) {
+				Interval pause = pauses.get(p);
+				iteration.collecting += Math.min(iteration.end, pause.end) - Math.max(iteration.start, pause.start);
+			}
+		}
+	}
+
+	public void print(PrintStream out) {
+		out.printf("%-18s %9s %12s %10s %10s%n", "phase", "count", "total-ms", "mean-ms", "max-ms");
+		for (Map.Entry<String, Summary> phase : phases.entrySet()) {
+			print(out, phase.getKey(), phase.getValue());
+		}
+		if (fdrSearchTime.count > 0) {
+			print(out, "FdrSearch:search", fdrSearchTime);
+		}
+		if (!barrierWaits.isEmpty()) {
+			out.println();
+			out.printf("%-24s %9s %12s %10s %10s%n", "barrier wait", "count", "total-ms", "mean-ms", "max-ms");
+			for (Map.Entry<String, Summary> wait : barrierWaits.entrySet()) {
+				Summary summary = wait.getValue();
+				out.printf("%-24s %9d %12.3f %10.3f %10.3f%n", wait.getKey(), summary.count, summary.total / 1e6,
+						summary.total / 1e6 / summary.count, summary.max / 1e6);
+			}
+		}
+
+		out.println();
+		print(out, "GarbageCollection", collections);
+		int overlapping = 0;
+		long collecting = 0;
+		long iterationTime = 0;
+		for (Interval iteration : iterations) {
+			if (iteration.collecting > 0) {
+				overlapping++;
+			}
+			collecting += iteration.collecting;
+			iterationTime += iteration.end - iteration.start;
+		}
+		out.printf("iterations overlapping a collection %d of %d, %.3f ms of %.3f ms%n", overlapping, iterations.size(),
+				collecting / 1e6, iterationTime / 1e6);
+
+		List<Interval> slowest = new ArrayList<Interval>(iterations);
+		Collections.sort(slowest, new Comparator<Interval>() {
+			@Override
+			public int compare(Interval a, Interval b) {
+				long da = a.end - a.start;
+				long db = b.end - b.start;
+				return da > db ? -1 : da < db ? 1 : 0;
+			}
+		});
+		if (!slowest.isEmpty()) {
+			out.println();
+			out.printf("%-18s %10s %14s%n", "slowest iteration", "ms", "collecting-ms");
+			for (Interval iteration : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+				out.printf("%-18d %10.3f %14.3f%n", iteration.label, (iteration.end - iteration.start) / 1e6,
+						iteration.collecting / 1e6);
+			}
+		}
+	}
+
+	private static void print(PrintStream out, String name, Summary summary) {
+		out.printf("%-18s %9d %12.3f %10.3f %10.3f%n", name, summary.count, summary.total / 1e6,
+				summary.count == 0 ? 0 : summary.total / 1e6 / summary.count, summary.max / 1e6);
+	}
+}
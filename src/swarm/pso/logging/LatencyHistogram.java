@@ -0,0 +1,80 @@
+package swarm.pso.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Counts of nanosecond durations in log-linear buckets: each power of two is split into SUB_BUCKETS equal buckets,
+//so a percentile is within 1 / SUB_BUCKETS of the true value whatever the range. Fixed size, never allocates
+//once created, and every count can be read from any thread while durations are being recorded.
+public class LatencyHistogram {
+	public static final int SUB_BUCKET_BITS = 3;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		for (long current = max.get(); nanos > current && !max.compareAndSet(current, nanos); current = max.get()) {
+		}
+	}
+
+	// Values below SUB_BUCKETS get a bucket each, above that a power of two's SUB_BUCKETS buckets follow the last's
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); // At least SUB_BUCKET_BITS
+		int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// The largest value that falls in bucket
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (bucket % SUB_BUCKETS + 1) * width - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	// The value that fraction of the durations are at most, rounded up to the end of its bucket. 0 when empty
+	public long getPercentile(double fraction) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			seen += counts.get(b);
+			if (seen >= rank) {
+				return Math.min(upperBound(b), max.get());
+			}
+		}
+		return max.get(); // Recorded while we were reading
+	}
+}
@@ -11,14 +11,23 @@ import swarm.pso.structures.config.FunctionConfiguration;
 import swarm.pso.structures.config.SwarmConfiguration;
 
 public class Logging {
-    List<List<Double>> particlePositions;
-        // 2D array represented in 1D, iteration x particle. ex. to get particle 4 for 2nd iteration, 2*particle count + 4
-    List<List<Double>> bestPositions;
-    List<Long> times;
+    double[][] particlePositions;
+        // iteration x (particle x dimension). ex. to get dimension 1 of particle 4 for 2nd iteration,
+        // particlePositions[2][4 * dimensions + 1]
+    double[][] bestPositions;
+    double[] bestValues; // f(bestPositions[i]) as evaluated by the optimizer, so it never has to be recomputed
+    long[] times;
     long startTime;
+    long[] maxBusyTimes; // Per iteration, the longest any thread spent updating particles,
+    long[] meanBusyTimes; // the mean over all threads, and how many ranges idle threads stole.
+    long[] steals; // Only recorded by optimizers that report load balance
+    boolean loadBalanceRecorded = false;
+    String tuning; // How an AutoTuner chose to run, null when the run was configured by hand
+    volatile RunMetrics metrics; // Null unless enabled, and then recorded by the optimizer itself
 
     int particleCount;
     int iterationCount;
+    int dimensions;
     
     private final FunctionConfiguration config;
     
@@ -28,50 +37,138 @@ public class Logging {
     	this.config = config;
         this.particleCount = config.getNumParticles();
         this.iterationCount = config.getNumIterations();
+        this.dimensions = config.getDimensions();
     	
-        particlePositions = new ArrayList<List<Double>>(particleCount * iterationCount);
-        for (int i = 0; i < particleCount * iterationCount; i++) {
-        	particlePositions.add(null);
-        }
-        bestPositions = new ArrayList<List<Double>>(iterationCount);
-        for (int i = 0; i < iterationCount; i++) {
-        	bestPositions.add(null);
-        }
-        times = new ArrayList<Long>(iterationCount);
-        for (int i = 0; i < iterationCount; i++) {
-        	times.add(null);
-        }
+        // Everything is allocated up front so that recording an iteration never allocates
+        particlePositions = new double[iterationCount][particleCount * dimensions];
+        bestPositions = new double[iterationCount][dimensions];
+        bestValues = new double[iterationCount];
+        times = new long[iterationCount];
+        maxBusyTimes = new long[iterationCount];
+        meanBusyTimes = new long[iterationCount];
+        steals = new long[iterationCount];
         startTime = System.nanoTime();
 
         latestIteration = -1;
     }
 
-    public void addParticlePosition(int iteration, int particleNumber, List<Double> bestPosition) {
-        particlePositions.set(iteration * particleCount + particleNumber, bestPosition);
+    public void addParticlePosition(int iteration, int particleNumber, List<Double> position) {
+        double[] row = particlePositions[iteration];
+        for (int d = 0; d < dimensions; d++) {
+            row[particleNumber * dimensions + d] = position.get(d);
+        }
+    }
+    // Copies positions[offset] through positions[offset + dimensions - 1] as the particle's position
+    public void addParticlePosition(int iteration, int particleNumber, double[] positions, int offset) {
+        System.arraycopy(positions, offset, particlePositions[iteration], particleNumber * dimensions, dimensions);
     }
-    public void addBestPosition(int iteration, List<Double> bestPosition) {
-        bestPositions.set(iteration, bestPosition);
+    // Copies every particle's position at once from a swarm laid out the same way, particle by particle
+    public void addParticlePositions(int iteration, double[] positions) {
+        System.arraycopy(positions, 0, particlePositions[iteration], 0, particleCount * dimensions);
+    }
+    public void addBestPosition(int iteration, List<Double> bestPosition, double bestValue) {
+        double[] row = bestPositions[iteration];
+        for (int d = 0; d < dimensions; d++) {
+            row[d] = bestPosition.get(d);
+        }
+        bestValues[iteration] = bestValue;
+    }
+    public void addBestPosition(int iteration, double[] bestPosition, double bestValue) {
+        System.arraycopy(bestPosition, 0, bestPositions[iteration], 0, dimensions);
+        bestValues[iteration] = bestValue;
     }
     public void addTime(int iteration, long time) {
-        times.set(iteration, time - startTime);
+        times[iteration] = time - startTime;
     	synchronized(iterationGuard) {
     		if(iteration > latestIteration) latestIteration = iteration;
     	}
     }
+    public void addLoadBalance(int iteration, long maxBusyTime, long meanBusyTime, long stealCount) {
+        maxBusyTimes[iteration] = maxBusyTime;
+        meanBusyTimes[iteration] = meanBusyTime;
+        steals[iteration] = stealCount;
+        loadBalanceRecorded = true;
+    }
+    public void setTuning(String tuning) {
+        this.tuning = tuning;
+    }
     public void setStartTime() {
         startTime = System.nanoTime();
+        if (metrics != null) {
+            metrics.start();
+        }
+    }
+    // Call before creating the optimizer, which only records metrics if its log has them when it starts
+    public RunMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new RunMetrics();
+        }
+        return metrics;
     }
 
     public List<Double> getParticlePosition(int iteration, int particleNumber) {
-        return particlePositions.get(iteration * particleCount + particleNumber);
+        return toList(particlePositions[iteration], particleNumber * dimensions);
+    }
+
+    public double getParticlePosition(int iteration, int particleNumber, int dimension) {
+        return particlePositions[iteration][particleNumber * dimensions + dimension];
+    }
+
+    // Every particle's position in one array, laid out particle by particle
+    public double[] copyParticlePositions(int iteration) {
+        return particlePositions[iteration].clone();
+    }
+    // The positions of particles 0, stride, 2 * stride ... laid out the same way
+    public double[] copyParticlePositions(int iteration, int stride) {
+        if (stride == 1) {
+            return copyParticlePositions(iteration);
+        }
+        double[] copy = new double[(particleCount + stride - 1) / stride * dimensions];
+        for (int p = 0, i = 0; p < particleCount; p += stride, i += dimensions) {
+            System.arraycopy(particlePositions[iteration], p * dimensions, copy, i, dimensions);
+        }
+        return copy;
     }
 
     public List<Double> getBestPosition(int iteration) {
-        return bestPositions.get(iteration);
+        return toList(bestPositions[iteration], 0);
+    }
+
+    public double getBestValue(int iteration) {
+        return bestValues[iteration];
     }
 
     public long getTime(int iteration) {
-        return times.get(iteration);
+        return times[iteration];
+    }
+
+    public long getMaxBusyTime(int iteration) {
+        return maxBusyTimes[iteration];
+    }
+
+    public long getMeanBusyTime(int iteration) {
+        return meanBusyTimes[iteration];
+    }
+
+    // The slowest thread's time over the mean, 1 when every thread was equally busy
+    public double getLoadImbalance(int iteration) {
+        return meanBusyTimes[iteration] == 0 ? 1 : (double) maxBusyTimes[iteration] / meanBusyTimes[iteration];
+    }
+
+    public long getSteals(int iteration) {
+        return steals[iteration];
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public String getTuning() {
+        return tuning;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
     }
 
     public int getLatestIteration() {
@@ -80,27 +177,90 @@ public class Logging {
     	}
     }
 
+    private List<Double> toList(double[] values, int offset) {
+        List<Double> list = new ArrayList<Double>(dimensions);
+        for (int d = 0; d < dimensions; d++) {
+            list.add(values[offset + d]);
+        }
+        return list;
+    }
+
     public void writeToFile(String prefix) {
+        FlightEvents.Event event = FlightEvents.LOG_FLUSH.begin();
         writeBestPositionsToFile(prefix);
         writeErrorsToFile(prefix);
         writeTimesToFile(prefix);
+        if (loadBalanceRecorded) {
+            writeLoadBalanceToFile(prefix);
+        }
+        if (tuning != null) {
+            writeTuningToFile(prefix);
+        }
+        if (metrics != null) {
+            writeMetricsToFile(prefix);
+        }
+        if (event != null) {
+            event.commit(prefix);
+        }
+    }
+
+    private void writeMetricsToFile(String prefix) {
+        File file = new File(prefix + "metrics.txt");
+        try {
+            if (!file.exists()) file.createNewFile();
+
+            FileWriter fw = new FileWriter(file.getAbsoluteFile());
+            BufferedWriter bw = new BufferedWriter(fw);
+            bw.write(metrics.summary());
+            bw.close();
+        } catch(IOException e) { e.printStackTrace(); }
+    }
+
+    private void writeTuningToFile(String prefix) {
+        File file = new File(prefix + "tuning.txt");
+        try {
+            if (!file.exists()) file.createNewFile();
+
+            FileWriter fw = new FileWriter(file.getAbsoluteFile());
+            BufferedWriter bw = new BufferedWriter(fw);
+            bw.write(tuning);
+            bw.write("\n");
+            bw.close();
+        } catch(IOException e) { e.printStackTrace(); }
+    }
+
+    private void writeLoadBalanceToFile(String prefix) {
+        int iterations = getLatestIteration() + 1; // Fewer than configured if the run was stopped early
+        File file = new File(prefix + "loadbalance.txt");
+        try {
+            if (!file.exists()) file.createNewFile();
+
+            FileWriter fw = new FileWriter(file.getAbsoluteFile());
+            BufferedWriter bw = new BufferedWriter(fw);
+            for(int i = 0; i < iterations; i++) {
+                bw.write(String.format("%d,%d,%.4f,%d\n", maxBusyTimes[i], meanBusyTimes[i], getLoadImbalance(i), steals[i]));
+            }
+            bw.close();
+        } catch(IOException e) { e.printStackTrace(); }
     }
 
     private void writeTimesToFile(String prefix) {
+        int iterations = getLatestIteration() + 1;
         File file = new File(prefix + "times.txt");
         try {
             if (!file.exists()) file.createNewFile();
 
             FileWriter fw = new FileWriter(file.getAbsoluteFile());
             BufferedWriter bw = new BufferedWriter(fw);
-            for(int i = 0; i < times.size(); i++) {
-                bw.write(String.format("%d\n", times.get(i)));
+            for(int i = 0; i < iterations; i++) {
+                bw.write(String.format("%d\n", times[i]));
             }
             bw.close();
         } catch(IOException e) { e.printStackTrace(); }
     }
 
     private void writeErrorsToFile(String prefix) {
+        int iterations = getLatestIteration() + 1;
         File file = new File(prefix + "errorvals.txt");
         try {
             if (!file.exists()) file.createNewFile();
@@ -108,11 +268,11 @@ public class Logging {
             FileWriter fw = new FileWriter(file.getAbsoluteFile());
             BufferedWriter bw = new BufferedWriter(fw);
             
-            for(int i = 0; i < bestPositions.size(); i++) {
+            for(int i = 0; i < iterations; i++) {
                 //bw.write(String.format("%d,", i));
-                bw.write(Double.toString(config.function(bestPositions.get(i))-config.getSolution()));
+                bw.write(Double.toString(bestValues[i]-config.getSolution()));
                 
-                if (i < bestPositions.size() - 1) {
+                if (i < iterations - 1) {
                     bw.write("\n");
                 }
             }
@@ -121,6 +281,7 @@ public class Logging {
     }
 
     private void writeBestPositionsToFile(String prefix) {
+        int iterations = getLatestIteration() + 1;
         File file = new File(prefix + "bestposition.txt");
         try {
             if (!file.exists()) file.createNewFile();
@@ -128,16 +289,16 @@ public class Logging {
             FileWriter fw = new FileWriter(file.getAbsoluteFile());
             BufferedWriter bw = new BufferedWriter(fw);
             
-            for(int i = 0; i < bestPositions.size(); i++) {
+            for(int i = 0; i < iterations; i++) {
                 //bw.write(String.format("%d,", i));
-                for(int currentDimension = 0; currentDimension < bestPositions.get(i).size(); currentDimension++) {
-                    bw.write(Double.toString(bestPositions.get(i).get(currentDimension)));
-                    if(currentDimension < bestPositions.get(i).size() - 1) {
+                for(int currentDimension = 0; currentDimension < dimensions; currentDimension++) {
+                    bw.write(Double.toString(bestPositions[i][currentDimension]));
+                    if(currentDimension < dimensions - 1) {
                         bw.write(",");
                     } 
                 }
                 
-                if (i < bestPositions.size() - 1) {
+                if (i < iterations - 1) {
                     bw.write("\n");
                 }
             }
@@ -0,0 +1,234 @@
+package swarm.pso.logging;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Where one run's time goes. Turn it on with Logging.enableMetrics() before creating the optimizer; optimizers whose
+//log has no metrics skip every measurement behind a null check.
+//Each thread working for the run records into a Recorder of its own, so recording never contends: per phase time,
+//time waiting for other threads, and CPU time and bytes allocated while working for the run. The run as a whole
+//records each iteration's latency and the evaluations so far. Every counter is written by one thread at a time and
+//can be read from any other without locking while the run is in progress.
+//The phases of a single particle's update are only timed for one particle in SAMPLE_PERIOD, and counted
+//SAMPLE_PERIOD times, since timing every particle would cost as much as updating the cheaper ones. Work done a whole
+//range of particles at a time, such as batch evaluation, and waits are timed exactly.
+public class RunMetrics {
+	public enum Phase {
+		FDR_SEARCH, // Finding each dimension's fitness-distance-ratio particle
+		MOVE, // Velocity and position updates
+		EVALUATE, // The objective function
+		SELECT, // Personal and global best updates
+		LOGGING, // Copying state into the log, and the bookkeeping that runs alongside the next iteration
+		WAIT // At barriers, including the end of the iteration run by the last thread to arrive
+	}
+
+	public static final int SAMPLE_PERIOD = 16; // A power of two
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_TIME = THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+	private static final boolean ALLOCATION = THREADS instanceof com.sun.management.ThreadMXBean &&
+			((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported() &&
+			((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+
+	private final List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+	private final LatencyHistogram iterationLatency = new LatencyHistogram();
+	private volatile long startTime = System.nanoTime();
+	private volatile long lastIterationEnd = startTime; // Only written by iterationEnded, one iteration at a time
+	private volatile int latestIteration = -1;
+	private volatile long evaluations = 0;
+
+	// A recorder for one thread of the run, or one role a succession of threads take turns in
+	public Recorder newRecorder(String name) {
+		Recorder recorder = new Recorder(name);
+		recorders.add(recorder);
+		return recorder;
+	}
+
+	// Called as the run starts, when the log's start time is set
+	public void start() {
+		startTime = lastIterationEnd = System.nanoTime();
+	}
+
+	// Called once per iteration, in order, with the time it ended and the run's evaluations by then
+	public void iterationEnded(int iteration, long time, long evaluations) {
+		iterationLatency.record(time - lastIterationEnd);
+		lastIterationEnd = time;
+		this.evaluations = evaluations;
+		latestIteration = iteration;
+	}
+
+	public int getLatestIteration() {
+		return latestIteration;
+	}
+
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	// From the start of the run to the end of the latest iteration
+	public long getElapsedTime() {
+		return lastIterationEnd - startTime;
+	}
+
+	public double getEvaluationsPerSecond() {
+		long elapsed = getElapsedTime();
+		return elapsed == 0 ? 0 : evaluations * 1e9 / elapsed;
+	}
+
+	public LatencyHistogram getIterationLatency() {
+		return iterationLatency;
+	}
+
+	public List<Recorder> getRecorders() {
+		return recorders;
+	}
+
+	// Summed over every thread, in nanoseconds
+	public long getPhaseTime(Phase phase) {
+		long time = 0;
+		for (Recorder recorder : recorders) {
+			time += recorder.getPhaseTime(phase);
+		}
+		return time;
+	}
+
+	// -1 if the JVM cannot measure it
+	public long getCpuTime() {
+		if (!CPU_TIME) {
+			return -1;
+		}
+		long time = 0;
+		for (Recorder recorder : recorders) {
+			time += recorder.getCpuTime();
+		}
+		return time;
+	}
+
+	// -1 if the JVM cannot measure it
+	public long getAllocatedBytes() {
+		if (!ALLOCATION) {
+			return -1;
+		}
+		long bytes = 0;
+		for (Recorder recorder : recorders) {
+			bytes += recorder.getAllocatedBytes();
+		}
+		return bytes;
+	}
+
+	// One line per measure, times in milliseconds
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("iterations %d%n", latestIteration + 1));
+		sb.append(String.format("evaluations %d%n", evaluations));
+		sb.append(String.format("evaluations-per-second %.0f%n", getEvaluationsPerSecond()));
+		sb.append(String.format("elapsed-ms %.3f%n", getElapsedTime() / 1e6));
+		sb.append(String.format("cpu-ms %.3f%n", getCpuTime() / 1e6));
+		sb.append(String.format("allocated-bytes %d%n", getAllocatedBytes()));
+		for (Phase phase : Phase.values()) {
+			sb.append(String.format("phase %s %.3f%n", phase.name().toLowerCase(), getPhaseTime(phase) / 1e6));
+		}
+		for (Recorder recorder : recorders) {
+			if (recorder.getPhaseTime(Phase.WAIT) > 0) { // Only threads that wait for each other
+				sb.append(String.format("wait %s %.3f%n", recorder.getName(), recorder.getPhaseTime(Phase.WAIT) / 1e6));
+			}
+		}
+		sb.append(String.format("iteration-ms mean %.3f p50 %.3f p90 %.3f p99 %.3f max %.3f%n",
+				iterationLatency.getMean() / 1e6, iterationLatency.getPercentile(0.5) / 1e6,
+				iterationLatency.getPercentile(0.9) / 1e6, iterationLatency.getPercentile(0.99) / 1e6,
+				iterationLatency.getMax() / 1e6));
+		return sb.toString();
+	}
+
+	// Written by one thread at a time. The counters are only ever increased, with ordered writes so other threads
+	// read them without tearing or locking
+	public static class Recorder {
+		private final String name;
+		private final AtomicLongArray phaseTimes = new AtomicLongArray(Phase.values().length);
+		private final AtomicLongArray work = new AtomicLongArray(2); // CPU time and bytes allocated
+
+		private int particles = 0; // Particle updates begun, to pick every SAMPLE_PERIOD-th one
+		private boolean sampling = false; // Whether the particle being updated is timed,
+		private long last; // and when its last phase ended
+		private long workThread = -1; // The thread beginWork was called on, and its CPU time and allocation then
+		private long workCpuTime;
+		private long workAllocation;
+
+		Recorder(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// Starts timing the next particle's update if it is one of the sampled ones
+		public void beginParticle() {
+			sampling = (++particles & (SAMPLE_PERIOD - 1)) == 0;
+			if (sampling) {
+				last = System.nanoTime();
+			}
+		}
+
+		// The sampled particle has finished phase, which started when the last one ended
+		public void endPhase(Phase phase) {
+			if (sampling) {
+				long now = System.nanoTime();
+				add(phase, (now - last) * SAMPLE_PERIOD);
+				last = now;
+			}
+		}
+
+		// Time measured exactly, with System.nanoTime()
+		public void add(Phase phase, long nanos) {
+			int i = phase.ordinal();
+			phaseTimes.lazySet(i, phaseTimes.get(i) + nanos);
+		}
+
+		// Marks the start of work for the run on the calling thread. endWork may be called from another thread, as
+		// long as this one is still alive
+		public void beginWork() {
+			workThread = Thread.currentThread().getId();
+			workCpuTime = cpuTime(workThread);
+			workAllocation = allocation(workThread);
+		}
+
+		public void endWork() {
+			if (workThread < 0) {
+				return;
+			}
+			long cpu = cpuTime(workThread);
+			long bytes = allocation(workThread);
+			if (cpu >= 0) { // The thread may have ended
+				work.lazySet(0, work.get(0) + cpu - workCpuTime);
+			}
+			if (bytes >= 0) {
+				work.lazySet(1, work.get(1) + bytes - workAllocation);
+			}
+			workThread = -1;
+		}
+
+		public long getPhaseTime(Phase phase) {
+			return phaseTimes.get(phase.ordinal());
+		}
+
+		public long getCpuTime() {
+			return work.get(0);
+		}
+
+		public long getAllocatedBytes() {
+			return work.get(1);
+		}
+
+		private static long cpuTime(long thread) {
+			return CPU_TIME ? THREADS.getThreadCpuTime(thread) : 0;
+		}
+
+		private static long allocation(long thread) {
+			return ALLOCATION ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(thread) : 0;
+		}
+	}
+}
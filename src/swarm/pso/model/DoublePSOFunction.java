@@ -0,0 +1,82 @@
+package swarm.pso.model;
+
+import java.util.List;
+
+import swarm.pso.structures.DoubleArrayView;
+
+// A PSOFunction<Double> that can be evaluated directly on a region of a primitive array.
+// The optimizers call function(double[], int) on their own position arrays, so nothing is boxed per evaluation.
+public abstract class DoublePSOFunction extends PSOFunction<Double> {
+	//Performs the actual function on arguments[offset] through arguments[offset + getDimensions() - 1]
+	public abstract double function(double[] arguments, int offset);
+
+	//Evaluates count points stored one after another from arguments[offset], writing the value of point i
+	//to results[resultOffset + i]. Override this when a block of points is cheaper than one point at a time.
+	public void function(double[] arguments, int offset, int count, double[] results, int resultOffset) {
+		int dimensions = getDimensions();
+		for (int i = 0; i < count; i++) {
+			results[resultOffset + i] = function(arguments, offset + i * dimensions);
+		}
+	}
+
+	//Copies the arguments into an array so existing callers of the list version keep working
+	@Override
+	public Double function(List<Double> arguments) {
+		if (arguments.size() != getDimensions()) {
+			throw new IllegalArgumentException("Expected " + getDimensions() + " doubles");
+		}
+		double[] array = new double[arguments.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = arguments.get(i);
+		}
+		return function(array, 0);
+	}
+
+	// Returns function itself if it is already a DoublePSOFunction, otherwise an adapter calling its list version
+	public static DoublePSOFunction wrap(PSOFunction<Double> function) {
+		if (function instanceof DoublePSOFunction) {
+			return (DoublePSOFunction) function;
+		}
+		return new Adapter(function);
+	}
+
+	// Presents an array region to a list based PSOFunction through a view instead of a copy
+	private static class Adapter extends DoublePSOFunction {
+		private final PSOFunction<Double> function;
+
+		Adapter(PSOFunction<Double> function) {
+			this.function = function;
+		}
+
+		@Override
+		public double function(double[] arguments, int offset) {
+			// A view per call keeps the adapter safe to use from several threads at once
+			return function.function(new DoubleArrayView(function.getDimensions()).wrap(arguments, offset));
+		}
+
+		@Override
+		public Double function(List<Double> arguments) {
+			return function.function(arguments);
+		}
+
+		@Override
+		public int getDimensions() {
+			return function.getDimensions();
+		}
+
+		@Override
+		public Double getSolution() {
+			return function.getSolution();
+		}
+
+		@Override
+		public List<Double> getLowerBounds() {
+			return function.getLowerBounds();
+		}
+
+		@Override
+		public List<Double> getUpperBounds() {
+			return function.getUpperBounds();
+		}
+	}
+}
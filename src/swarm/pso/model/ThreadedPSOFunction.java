@@ -0,0 +1,163 @@
+package swarm.pso.model;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Evaluates the points of a batch concurrently, one task per point, for functions that spend most of their time
+// blocked (reading files, waiting on another process). Set SwarmConfiguration's evaluationBatchSize so the optimizers
+// hand over whole batches. Single evaluations still run on the calling thread.
+// Tasks run on virtual threads when the JVM has them (Java 21 and later), found by reflection since this project
+// targets Java 7, and otherwise on a pool of daemon platform threads. Either way at most maxConcurrency evaluations
+// are in flight at once across all callers.
+public class ThreadedPSOFunction extends DoublePSOFunction implements AutoCloseable {
+	private final DoublePSOFunction function;
+	private final ExecutorService executor;
+	private final boolean virtual; // Whether executor starts a virtual thread per task
+	private final Semaphore permits; // One per evaluation allowed in flight
+	private volatile boolean closed = false;
+
+	public ThreadedPSOFunction(PSOFunction<Double> function, int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("Need to allow at least one evaluation at a time");
+		}
+		this.function = DoublePSOFunction.wrap(function); // Wrapped functions must be safe to call from several threads
+		permits = new Semaphore(maxConcurrency);
+
+		ExecutorService virtualExecutor = newVirtualThreadExecutor();
+		virtual = virtualExecutor != null;
+		executor = virtual ? virtualExecutor : Executors.newCachedThreadPool(new ThreadFactory() {
+			// Daemon threads, so an unclosed function never keeps the JVM alive
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "pso-evaluation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	@Override
+	public double function(double[] arguments, int offset) {
+		return function.function(arguments, offset);
+	}
+
+	// Blocks until every point is evaluated. If any evaluation throws, the first exception is rethrown once the
+	// others finish, and the results of the failed points are left unchanged. Throws IllegalStateException once closed,
+	// and if it is closed during the call, after the points already handed over are evaluated.
+	// An interrupt does not end the wait, since the tasks write into results, which the caller reuses. It is kept for
+	// the caller once they are done
+	@Override
+	public void function(final double[] arguments, int offset, int count, final double[] results, int resultOffset) {
+		if (closed) {
+			throw new IllegalStateException("The function has been closed");
+		}
+		if (count == 1) {
+			results[resultOffset] = function.function(arguments, offset);
+			return;
+		}
+		final CountDownLatch done = new CountDownLatch(count);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		int dimensions = getDimensions();
+		for (int i = 0; i < count; i++) {
+			final int pointOffset = offset + i * dimensions;
+			final int result = resultOffset + i;
+			permits.acquireUninterruptibly(); // Released by the task, so waiting here bounds the evaluations in flight
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							results[result] = function.function(arguments, pointOffset);
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						} finally {
+							permits.release();
+							done.countDown();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				failure.compareAndSet(null, new IllegalStateException("The function was closed during a batch", e));
+				for (int j = i; j < count; j++) {
+					done.countDown(); // Never handed over, so only the points that were are waited for
+				}
+				break;
+			}
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		else if (t instanceof Error) {
+			throw (Error) t;
+		}
+		else if (t != null) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	@Override
+	public Double function(List<Double> arguments) {
+		return function.function(arguments);
+	}
+
+	@Override
+	public int getDimensions() {
+		return function.getDimensions();
+	}
+
+	@Override
+	public Double getSolution() {
+		return function.getSolution();
+	}
+
+	@Override
+	public List<Double> getLowerBounds() {
+		return function.getLowerBounds();
+	}
+
+	@Override
+	public List<Double> getUpperBounds() {
+		return function.getUpperBounds();
+	}
+
+	// Stops the evaluation threads once running evaluations finish
+	@Override
+	public void close() {
+		closed = true;
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,8 @@
+package swarm.pso.random;
+
+// A generator that can produce many uniform doubles at once, without a call per number.
+// The optimizers draw every random factor a particle needs for one velocity update with a single fill.
+public interface BulkRandom {
+	// Fills dest[offset] through dest[offset + length - 1] with doubles uniformly distributed in [0, 1)
+	public void fill(double[] dest, int offset, int length);
+}
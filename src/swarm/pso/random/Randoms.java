@@ -0,0 +1,22 @@
+package swarm.pso.random;
+
+import java.util.Random;
+
+// Helpers that take the fast path for generators implementing BulkRandom, and work on any other Random
+public final class Randoms {
+	private Randoms() {
+	}
+
+	// Fills dest[offset] through dest[offset + length - 1] with uniform doubles in [0, 1).
+	// For a plain Random this gives exactly the numbers that length calls to nextDouble() would, in the same order.
+	public static void fill(Random rand, double[] dest, int offset, int length) {
+		if (rand instanceof BulkRandom) {
+			((BulkRandom) rand).fill(dest, offset, length);
+		}
+		else {
+			for (int i = offset; i < offset + length; i++) {
+				dest[i] = rand.nextDouble();
+			}
+		}
+	}
+}
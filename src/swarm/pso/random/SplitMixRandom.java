@@ -0,0 +1,76 @@
+package swarm.pso.random;
+
+import java.util.Random;
+
+// A fast, unsynchronized generator based on SplitMix64. It extends Random so it can be used anywhere a Random is,
+// but it must not be shared between threads. Instead, give every particle or stream of work its own generator:
+// stream(rootSeed, i) depends only on the root seed and i, so the numbers a stream produces do not depend on
+// which thread uses it or in what order streams are created.
+@SuppressWarnings("serial")
+public class SplitMixRandom extends Random implements BulkRandom {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // Odd constant that spaces out successive states
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long state;
+
+	public SplitMixRandom(long seed) {
+		super(0);
+		state = seed;
+	}
+
+	// The generator for stream index of rootSeed, computed directly rather than by stepping through other streams
+	public static SplitMixRandom stream(long rootSeed, long index) {
+		return new SplitMixRandom(mix64(rootSeed + (index + 1) * GOLDEN_GAMMA));
+	}
+
+	// A new generator whose numbers are independent of this one's
+	public SplitMixRandom split() {
+		return new SplitMixRandom(mix64(nextLong()));
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		state = seed; // Called by Random's constructor, and by anyone resetting this generator
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(state += GOLDEN_GAMMA);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		// Multiply-shift is slightly biased for bounds that are not powers of two, which is irrelevant here
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	// Same numbers as length calls to nextDouble()
+	@Override
+	public void fill(double[] dest, int offset, int length) {
+		long s = state;
+		for (int i = offset; i < offset + length; i++) {
+			dest[i] = (mix64(s += GOLDEN_GAMMA) >>> 11) * DOUBLE_UNIT;
+		}
+		state = s;
+	}
+
+	// Stafford's variant 13 of the MurmurHash3 finalizer, as used by SplitMix64
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
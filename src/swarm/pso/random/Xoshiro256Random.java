@@ -0,0 +1,85 @@
+package swarm.pso.random;
+
+import java.util.Random;
+
+// A fast, unsynchronized generator implementing Blackman and Vigna's xoshiro256**, with a period of 2^256 - 1.
+// It extends Random so it can be passed to the optimizers in place of java.util.Random, and fills buffers of doubles
+// in a tight loop over local state. Not thread safe: give each thread or particle its own instance.
+@SuppressWarnings("serial")
+public class Xoshiro256Random extends Random implements BulkRandom {
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long s0, s1, s2, s3;
+
+	// Seeded from a new java.util.Random, for runs that do not need to be repeated
+	public Xoshiro256Random() {
+		this(new Random().nextLong());
+	}
+
+	public Xoshiro256Random(long seed) {
+		super(0);
+		setSeed(seed);
+	}
+
+	// The state is expanded from the seed with SplitMix64, so similar seeds still give unrelated sequences
+	@Override
+	public synchronized void setSeed(long seed) {
+		SplitMixRandom seeder = new SplitMixRandom(seed);
+		s0 = seeder.nextLong();
+		s1 = seeder.nextLong();
+		s2 = seeder.nextLong();
+		s3 = seeder.nextLong();
+	}
+
+	@Override
+	public long nextLong() {
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	// Same numbers as length calls to nextDouble(), with the state kept in locals for the whole loop
+	@Override
+	public void fill(double[] dest, int offset, int length) {
+		long a = s0, b = s1, c = s2, d = s3;
+		for (int i = offset; i < offset + length; i++) {
+			long result = Long.rotateLeft(b * 5, 7) * 9;
+			long t = b << 17;
+			c ^= a;
+			d ^= b;
+			b ^= c;
+			a ^= d;
+			c ^= t;
+			d = Long.rotateLeft(d, 45);
+			dest[i] = (result >>> 11) * DOUBLE_UNIT;
+		}
+		s0 = a;
+		s1 = b;
+		s2 = c;
+		s3 = d;
+	}
+}
@@ -0,0 +1,459 @@
+package swarm.pso.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.service.IterationPublisher;
+import swarm.pso.service.IterationSnapshot;
+import swarm.pso.service.ReactiveStreams;
+import swarm.pso.service.SwarmOptimization;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//A live view of running optimizations in a browser, for machines with no display. Watch a run before optimizing it,
+//then open / on the dashboard's port: it plots the error against time, the evaluation rate, and where the particles
+//are in the first two dimensions.
+//GET /runs lists the runs by name, one per line, and GET /events?run=<name> streams one run as server-sent events:
+//  init with the run's shape and its convergence so far, then frame events and finally done.
+//Frames are rate limited to one per FRAME_INTERVAL of run time, and only ever sent as fast as each viewer takes them.
+//They are delta encoded: particle positions are snapped to a GRID x GRID grid over the domain and only the particles
+//that moved to another cell since the viewer's last frame are sent. At most MAX_PARTICLES evenly spaced particles are
+//shown, and only theirs are copied, so watching a run costs it a copy of a few thousand numbers per frame.
+public class Dashboard {
+	public static final int DEFAULT_PORT = 8643;
+	public static final long FRAME_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	public static final int MAX_PARTICLES = 500;
+	public static final int GRID = 1024;
+	public static final int MAX_HISTORY = 1024; // Convergence points kept for viewers that connect late, thinned out
+												// to every other point when full
+	public static final int MAX_FINISHED = 20; // Finished runs that stay viewable, the oldest are forgotten first.
+											// Each keeps its history and configuration, never its log
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Map<String, Feed> feeds = new LinkedHashMap<String, Feed>(); // Guarded by itself, in watch order
+	private final ArrayDeque<String> finished = new ArrayDeque<String>(); // Guarded by feeds, oldest first
+	private HttpServer server; // Only if started on a port of its own
+
+	// Serves the dashboard from a server of its own. Use register instead to share a server
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(Executors.newCachedThreadPool()); // A thread per viewer, mostly waiting for frames
+		register(server);
+		server.start();
+	}
+
+	// The port actually bound when started with port 0
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop(int delay) {
+		server.stop(delay);
+	}
+
+	// Adds the dashboard's pages to server, which should run handlers on a pool since viewers hold their threads
+	public void register(HttpServer server) {
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					String path = exchange.getRequestURI().getPath();
+					if (path.equals("/")) {
+						respond(exchange, 200, "text/html", PAGE);
+					}
+					else if (path.equals("/runs")) {
+						respond(exchange, 200, "text/plain", runs());
+					}
+					else if (path.equals("/events")) {
+						stream(exchange);
+					}
+					else {
+						respond(exchange, 404, "text/plain", "Not found\n");
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	// Call before the run starts. A run watched under a name already in use replaces the one before it
+	public void watch(String name, SwarmOptimization optimization, SwarmConfiguration config, Logging log) {
+		Feed feed = new Feed(name, config, log);
+		optimization.addIterationListener(feed.publisher);
+		synchronized (feeds) {
+			feeds.remove(name);
+			finished.remove(name);
+			feeds.put(name, feed);
+		}
+		feed.publisher.subscribe(feed);
+	}
+
+	private String runs() {
+		StringBuilder sb = new StringBuilder();
+		synchronized (feeds) {
+			for (String name : feeds.keySet()) {
+				sb.append(name).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private void finished(Feed feed) {
+		synchronized (feeds) {
+			if (feeds.get(feed.name) != feed) {
+				return;
+			}
+			finished.add(feed.name);
+			while (finished.size() > MAX_FINISHED) {
+				feeds.remove(finished.poll());
+			}
+		}
+	}
+
+	// Holds the handler's thread until the run or the viewer goes away
+	private void stream(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		String name = query != null && query.startsWith("run=") ? URLDecoder.decode(query.substring(4), "UTF-8") : null;
+		Feed feed;
+		synchronized (feeds) {
+			feed = name == null ? null : feeds.get(name);
+		}
+		if (feed == null) {
+			respond(exchange, 404, "text/plain", "No run named " + name + "\n");
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		Viewer viewer = new Viewer(feed, new OutputStreamWriter(exchange.getResponseBody(), UTF8));
+		if (viewer.start()) {
+			feed.publisher.subscribe(viewer);
+			viewer.await();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String type, String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	// JSON has no infinities or NaN
+	private static String number(double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+	}
+
+	// One watched run. It subscribes to its own publisher to keep the convergence history for late viewers
+	private class Feed implements ReactiveStreams.Subscriber<IterationSnapshot> {
+		private final String name;
+		private final SwarmConfiguration config;
+		private final double solution;
+		private final IterationPublisher publisher;
+
+		// Guarded by this
+		private final List<double[]> history = new ArrayList<double[]>(); // Time in seconds, iteration, error, evaluations
+		private int historyStride = 1; // Only every historyStride-th frame is kept
+		private int frames = 0;
+		private boolean done = false;
+
+		Feed(String name, SwarmConfiguration config, Logging log) {
+			this.name = name;
+			this.config = config;
+			this.solution = config.getSolution() == null ? 0 : config.getSolution();
+			publisher = new IterationPublisher(log, 1, FRAME_INTERVAL, MAX_PARTICLES, 1);
+		}
+
+		@Override
+		public void onSubscribe(ReactiveStreams.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public synchronized void onNext(IterationSnapshot snapshot) {
+			if (frames++ % historyStride != 0) {
+				return;
+			}
+			history.add(new double[] { snapshot.getElapsedTime() / 1e9, snapshot.getIteration(),
+					snapshot.getBestValue() - solution, snapshot.getEvaluations() });
+			if (history.size() == MAX_HISTORY) {
+				for (int i = 0; i < MAX_HISTORY / 2; i++) {
+					history.set(i, history.get(2 * i));
+				}
+				history.subList(MAX_HISTORY / 2, MAX_HISTORY).clear();
+				historyStride *= 2;
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			onComplete();
+		}
+
+		@Override
+		public void onComplete() {
+			synchronized (this) {
+				done = true;
+			}
+			finished(this);
+		}
+
+		// The init event, and whether the run was already over
+		synchronized boolean describe(StringBuilder sb, int shown) {
+			sb.append("{\"name\":\"").append(name.replace("\\", "\\\\").replace("\"", "\\\""))
+					.append("\",\"particles\":").append(config.getNumParticles())
+					.append(",\"shown\":").append(shown)
+					.append(",\"dimensions\":").append(config.getDimensions())
+					.append(",\"iterations\":").append(config.getNumIterations())
+					.append(",\"grid\":").append(GRID)
+					.append(",\"history\":[");
+			for (int i = 0; i < history.size(); i++) {
+				double[] point = history.get(i);
+				sb.append(i == 0 ? "[" : ",[").append(number(point[0])).append(',').append((long) point[1]).append(',')
+						.append(number(point[2])).append(',').append((long) point[3]).append(']');
+			}
+			sb.append("]}");
+			return done;
+		}
+
+		double getSolution() {
+			return solution;
+		}
+
+		// The grid cell of a coordinate in dimension d
+		int cell(double x, int d) {
+			double low = config.getLowerBounds().get(d);
+			double high = config.getUpperBounds().get(d);
+			return Math.max(0, Math.min(GRID - 1, (int) ((x - low) / (high - low) * GRID)));
+		}
+	}
+
+	// One browser watching one run. Frames are written on the publisher's delivery thread, and the next one is only
+	// requested once the last was written, so a viewer on a slow connection just gets fewer frames
+	private class Viewer implements ReactiveStreams.Subscriber<IterationSnapshot> {
+		private final Feed feed;
+		private final Writer out;
+		private final CountDownLatch ended = new CountDownLatch(1);
+		private final int shown; // Particles shown
+		private final int[] cells; // Each shown particle's cell as last sent, x * GRID + y, or -1 before the first frame
+		private ReactiveStreams.Subscription subscription; // Null until onSubscribe. The request thread reads it under this
+		private boolean cancelled = false; // Whether the request thread gave up, maybe before onSubscribe. Guarded by this
+		private double lastTime = 0; // Seconds and evaluations at the last frame, for the evaluation rate
+		private long lastEvaluations = 0;
+
+		Viewer(Feed feed, Writer out) {
+			this.feed = feed;
+			this.out = out;
+			int particles = feed.config.getNumParticles();
+			int stride = Math.max(1, (particles + MAX_PARTICLES - 1) / MAX_PARTICLES);
+			shown = (particles + stride - 1) / stride;
+			cells = new int[shown];
+			Arrays.fill(cells, -1);
+		}
+
+		// Sends the init event. Returns false if there is nothing more to send
+		boolean start() {
+			StringBuilder sb = new StringBuilder();
+			boolean done = feed.describe(sb, shown);
+			if (!send("init", sb.toString())) {
+				return false;
+			}
+			if (done) {
+				send("done", "{}");
+				return false;
+			}
+			return true;
+		}
+
+		void await() {
+			try {
+				ended.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel();
+			}
+		}
+
+		// From the request thread, which may get here before the delivery thread has called onSubscribe. Then
+		// onSubscribe cancels instead
+		private void cancel() {
+			ReactiveStreams.Subscription current;
+			synchronized (this) {
+				cancelled = true;
+				current = subscription;
+			}
+			if (current != null) {
+				current.cancel();
+			}
+		}
+
+		@Override
+		public void onSubscribe(ReactiveStreams.Subscription subscription) {
+			boolean cancel;
+			synchronized (this) {
+				this.subscription = subscription;
+				cancel = cancelled;
+			}
+			if (cancel) {
+				subscription.cancel();
+			}
+			else {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onNext(IterationSnapshot snapshot) {
+			double time = snapshot.getElapsedTime() / 1e9;
+			double rate = time > lastTime ? (snapshot.getEvaluations() - lastEvaluations) / (time - lastTime) : 0;
+			lastTime = time;
+			lastEvaluations = snapshot.getEvaluations();
+
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"i\":").append(snapshot.getIteration())
+					.append(",\"t\":").append(number(time))
+					.append(",\"e\":").append(number(snapshot.getBestValue() - feed.getSolution()))
+					.append(",\"v\":").append(snapshot.getEvaluations())
+					.append(",\"r\":").append(Math.round(rate))
+					.append(",\"p\":[");
+			double[] positions = snapshot.getParticlePositions();
+			int dimensions = feed.config.getDimensions();
+			boolean first = true;
+			for (int i = 0; i < shown && positions != null; i++) {
+				int x = feed.cell(positions[i * dimensions], 0);
+				int y = dimensions > 1 ? feed.cell(positions[i * dimensions + 1], 1) : 0;
+				if (cells[i] != x * GRID + y) {
+					cells[i] = x * GRID + y;
+					sb.append(first ? "" : ",").append(i).append(',').append(x).append(',').append(y);
+					first = false;
+				}
+			}
+			sb.append("]}");
+			if (send("frame", sb.toString())) {
+				subscription.request(1);
+			}
+			else {
+				subscription.cancel();
+				ended.countDown();
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			ended.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			send("done", "{}");
+			ended.countDown();
+		}
+
+		// Whether the viewer is still there
+		private boolean send(String event, String data) {
+			try {
+				out.write("event: " + event + "\ndata: " + data + "\n\n");
+				out.flush();
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+
+	private static final String PAGE = "<!DOCTYPE html>\n" +
+			"<html><head><meta charset=\"utf-8\"><title>Swarm dashboard</title>\n" +
+			"<style>body{font-family:sans-serif;margin:16px}canvas{border:1px solid #ccc;margin:8px 8px 0 0}" +
+			"#stats{margin-left:16px}</style></head><body>\n" +
+			"<select id=\"runs\"></select><span id=\"stats\"></span><br>\n" +
+			"<canvas id=\"curve\" width=\"560\" height=\"400\"></canvas>" +
+			"<canvas id=\"swarm\" width=\"400\" height=\"400\"></canvas>\n" +
+			"<script>\n" +
+			"var runs = document.getElementById('runs'), stats = document.getElementById('stats');\n" +
+			"var source = null, run = null, curve = [], cells = [], pending = false;\n" +
+			"function loadRuns() {\n" +
+			"  fetch('runs').then(function (r) { return r.text(); }).then(function (text) {\n" +
+			"    var names = text.split('\\n').filter(function (n) { return n; }), chosen = runs.value;\n" +
+			"    runs.innerHTML = '';\n" +
+			"    names.forEach(function (n) { var o = document.createElement('option'); o.text = n; runs.add(o); });\n" +
+			"    if (names.indexOf(chosen) >= 0) { runs.value = chosen; } else if (names.length) { watch(names[names.length - 1]); }\n" +
+			"  });\n" +
+			"}\n" +
+			"function watch(name) {\n" +
+			"  if (source) { source.close(); }\n" +
+			"  runs.value = name; curve = []; cells = []; run = null;\n" +
+			"  source = new EventSource('events?run=' + encodeURIComponent(name));\n" +
+			"  source.addEventListener('init', function (e) {\n" +
+			"    run = JSON.parse(e.data); curve = run.history; cells = new Array(run.shown);\n" +
+			"    stats.textContent = run.particles + ' particles, ' + run.dimensions + ' dimensions'; draw();\n" +
+			"  });\n" +
+			"  source.addEventListener('frame', function (e) {\n" +
+			"    var f = JSON.parse(e.data);\n" +
+			"    curve.push([f.t, f.i, f.e, f.v]);\n" +
+			"    for (var k = 0; k < f.p.length; k += 3) { cells[f.p[k]] = [f.p[k + 1], f.p[k + 2]]; }\n" +
+			"    stats.textContent = 'iteration ' + (f.i + 1) + ' of ' + run.iterations + ', error ' + f.e +\n" +
+			"        ', ' + f.r.toLocaleString() + ' evaluations/s';\n" +
+			"    draw();\n" +
+			"  });\n" +
+			"  source.addEventListener('done', function () { source.close(); stats.textContent += ' (done)'; });\n" +
+			"}\n" +
+			"function draw() {\n" +
+			"  if (pending) { return; }\n" +
+			"  pending = true;\n" +
+			"  requestAnimationFrame(function () { pending = false; drawCurve(); drawSwarm(); });\n" +
+			"}\n" +
+			"function drawCurve() {\n" +
+			"  var c = document.getElementById('curve'), g = c.getContext('2d');\n" +
+			"  g.clearRect(0, 0, c.width, c.height);\n" +
+			"  if (!curve.length) { return; }\n" +
+			"  var y = function (p) { return Math.log10(Math.max(Math.abs(p[2]), 1e-16)); };\n" +
+			"  var tMax = curve[curve.length - 1][0] || 1, yMin = Infinity, yMax = -Infinity;\n" +
+			"  curve.forEach(function (p) { yMin = Math.min(yMin, y(p)); yMax = Math.max(yMax, y(p)); });\n" +
+			"  if (yMax - yMin < 1) { yMax = yMin + 1; }\n" +
+			"  g.strokeStyle = '#c00'; g.beginPath();\n" +
+			"  curve.forEach(function (p, k) {\n" +
+			"    var px = 40 + p[0] / tMax * (c.width - 50), py = 10 + (yMax - y(p)) / (yMax - yMin) * (c.height - 40);\n" +
+			"    if (k) { g.lineTo(px, py); } else { g.moveTo(px, py); }\n" +
+			"  });\n" +
+			"  g.stroke(); g.fillStyle = '#000';\n" +
+			"  g.fillText('1e' + Math.round(yMax), 2, 14); g.fillText('1e' + Math.round(yMin), 2, c.height - 30);\n" +
+			"  g.fillText('error against time, ' + tMax.toFixed(2) + ' s', 40, c.height - 8);\n" +
+			"}\n" +
+			"function drawSwarm() {\n" +
+			"  var c = document.getElementById('swarm'), g = c.getContext('2d');\n" +
+			"  g.clearRect(0, 0, c.width, c.height);\n" +
+			"  if (!run) { return; }\n" +
+			"  g.fillStyle = '#c00';\n" +
+			"  cells.forEach(function (p) {\n" +
+			"    if (p) { g.fillRect(p[0] / run.grid * c.width - 1, c.height - p[1] / run.grid * c.height - 1, 3, 3); }\n" +
+			"  });\n" +
+			"}\n" +
+			"runs.addEventListener('change', function () { watch(runs.value); });\n" +
+			"runs.addEventListener('focus', loadRuns);\n" +
+			"loadRuns();\n" +
+			"</script></body></html>\n";
+}
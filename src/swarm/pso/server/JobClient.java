@@ -0,0 +1,103 @@
+package swarm.pso.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+//Submits jobs to a JobServer on this machine and reads back the lines it streams
+public class JobClient {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int port;
+
+	public JobClient(int port) {
+		this.port = port;
+	}
+
+	// Receives the server's lines as they arrive
+	public interface LineHandler {
+		void line(String line);
+	}
+
+	// Posts the request and hands every line to handler until the job ends. Returns the HTTP status, where anything
+	// but 200 means the job was refused and its only line says why
+	public int submit(String request, LineHandler handler) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/jobs").openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+			byte[] body = request.getBytes(UTF8);
+			connection.setFixedLengthStreamingMode(body.length);
+			OutputStream out = connection.getOutputStream();
+			out.write(body);
+			out.close();
+
+			int status = connection.getResponseCode();
+			InputStream in = status == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream();
+			if (in != null) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					handler.line(line);
+				}
+				reader.close();
+			}
+			return status;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	// Every line of the job, once it has ended
+	public List<String> submit(String request) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		submit(request, new LineHandler() {
+			@Override
+			public void line(String line) {
+				lines.add(line);
+			}
+		});
+		return lines;
+	}
+
+	public String status() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/status").openConnection();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF8));
+			StringBuilder sb = new StringBuilder();
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				sb.append(line).append('\n');
+			}
+			reader.close();
+			return sb.toString();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	// Arguments: the server's port, then the job as key=value pairs, for example 8642 function=1 particles=40 threads=2.
+	// Prints the lines as they arrive
+	public static void main(String[] args) throws IOException {
+		int port = args.length >= 1 ? Integer.parseInt(args[0]) : JobServer.DEFAULT_PORT;
+		StringBuilder request = new StringBuilder();
+		for (int i = 1; i < args.length; i++) {
+			request.append(args[i]).append('\n');
+		}
+		int status = new JobClient(port).submit(request.toString(), new LineHandler() {
+			@Override
+			public void line(String line) {
+				System.out.println(line);
+			}
+		});
+		if (status != HttpURLConnection.HTTP_OK) {
+			System.exit(1);
+		}
+	}
+}
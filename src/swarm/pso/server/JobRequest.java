@@ -0,0 +1,197 @@
+package swarm.pso.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.service.SwarmOptimization;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.StateUpdate;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
+import swarm.pso.test.Functions;
+
+//An optimization job as submitted to the JobServer: one key=value pair per line, every key optional.
+//function is a MainDriver function number, threads 1 runs the sequential optimizer and more the parallel one,
+//progress reports the best every that many iterations (0 for none), and the seed is random unless given.
+//timeLimit stops the run after that many milliseconds of running, with the best found so far (0 for no limit).
+//metrics=true records RunMetrics, reported once the job is done.
+public class JobRequest {
+	public static final int MAX_DIMENSIONS = 1000; // Bounds on what one request may ask for, so a typo cannot
+	public static final int MAX_PARTICLES = 100000; // allocate the server's whole heap before admission sees it
+	public static final int MAX_ITERATIONS = 1000000;
+
+	private static final String[] KEYS = { "function", "dimensions", "particles", "iterations", "seed", "threads",
+			"priority", "progress", "inertia", "minInertia", "selfWeight", "bestWeight", "fdrWeight", "batch", "fdr",
+			"fdrCandidates", "doubleBuffered", "timeLimit", "metrics" };
+
+	private final PSOFunction<Double> function;
+	private final SwarmConfiguration config;
+	private final long seed;
+	private final int numThreads;
+	private final int priority;
+	private final int progress;
+	private final boolean doubleBuffered;
+	private final long timeLimit; // Milliseconds
+	private final boolean metrics;
+
+	// Throws IllegalArgumentException, with a message for the client, if the request is malformed
+	public static JobRequest parse(String body) {
+		Map<String, String> values = new HashMap<String, String>();
+		for (String line : body.split("\r?\n")) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int equals = line.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + line);
+			}
+			String key = line.substring(0, equals).trim();
+			if (!Arrays.asList(KEYS).contains(key)) {
+				throw new IllegalArgumentException("Unknown key " + key);
+			}
+			values.put(key, line.substring(equals + 1).trim());
+		}
+		return new JobRequest(values);
+	}
+
+	private JobRequest(Map<String, String> values) {
+		int dimensions = intValue(values, "dimensions", 2, 2, MAX_DIMENSIONS);
+		switch (intValue(values, "function", 2, 0, 3)) {
+		case 0:
+			function = new Functions.Sphere(dimensions);
+			break;
+		case 1:
+			function = new Functions.Ackley(dimensions);
+			break;
+		case 2:
+			function = new Functions.Rosenbrock(dimensions);
+			break;
+		default:
+			function = new Functions.TableFunc();
+			break;
+		}
+		int numParticles = intValue(values, "particles", 10, 1, MAX_PARTICLES);
+		int numIterations = intValue(values, "iterations", 1000, 1, MAX_ITERATIONS);
+		seed = values.containsKey("seed") ? parseLong(values, "seed") : new Random().nextLong();
+		numThreads = intValue(values, "threads", 1, 1, Math.max(1, numParticles));
+		priority = intValue(values, "priority", 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		progress = intValue(values, "progress", Math.max(1, numIterations / 100), 0, Integer.MAX_VALUE);
+		doubleBuffered = Boolean.parseBoolean(values.get("doubleBuffered"));
+		timeLimit = intValue(values, "timeLimit", 0, 0, Integer.MAX_VALUE);
+		metrics = Boolean.parseBoolean(values.get("metrics"));
+
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		SwarmConfiguration swarmConf = new SwarmConfiguration(doubleValue(values, "inertia", 0.9),
+				doubleValue(values, "minInertia", 0.4), doubleValue(values, "selfWeight", 1),
+				doubleValue(values, "bestWeight", 1), doubleValue(values, "fdrWeight", 2), numParticles, numIterations,
+				maximumVelocity, funcConf);
+		swarmConf = new SwarmConfiguration(swarmConf, intValue(values, "batch", 0, 0, numParticles));
+		FdrStrategy strategy;
+		try {
+			strategy = FdrStrategy.valueOf(values.containsKey("fdr") ? values.get("fdr") : "EXACT");
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("fdr must be one of " + Arrays.toString(FdrStrategy.values()));
+		}
+		int fdrCandidates = intValue(values, "fdrCandidates", strategy == FdrStrategy.EXACT ? 0 : 8, 0, numParticles);
+		config = new SwarmConfiguration(swarmConf, strategy, fdrCandidates);
+	}
+
+	private static int intValue(Map<String, String> values, String key, int defaultValue, int min, int max) {
+		if (!values.containsKey(key)) {
+			return defaultValue;
+		}
+		long value = parseLong(values, key);
+		if (value < min || value > max) {
+			throw new IllegalArgumentException(key + " must be between " + min + " and " + max);
+		}
+		return (int) value;
+	}
+
+	private static long parseLong(Map<String, String> values, String key) {
+		try {
+			return Long.parseLong(values.get(key));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + " must be an integer");
+		}
+	}
+
+	private static double doubleValue(Map<String, String> values, String key, double defaultValue) {
+		if (!values.containsKey(key)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(values.get(key));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + " must be a number");
+		}
+	}
+
+	// Roughly what the run holds on the heap: the log's particles x iterations positions dominate, then the swarm's
+	// positions, velocities and two copies of the personal bests for each generation
+	public long estimateBytes() {
+		long dimensions = config.getDimensions();
+		long particles = config.getNumParticles();
+		long iterations = config.getNumIterations();
+		long logging = iterations * (particles * dimensions + dimensions + 6) * 8;
+		long generations = numThreads > 1 && doubleBuffered ? 2 : 1;
+		long swarm = generations * particles * (4 * dimensions + 2) * 8;
+		return logging + swarm;
+	}
+
+	public SwarmOptimization createOptimization(Logging log) {
+		if (numThreads == 1) {
+			return new SequentialOptimization(config, new Random(seed), log);
+		}
+		ConcurrentSwarmConfiguration concurrentConfig = new ConcurrentSwarmConfiguration(config, numThreads,
+				ConcurrentSwarmConfiguration.GlobalBestUpdate.MERGED,
+				doubleBuffered ? StateUpdate.DOUBLE_BUFFERED : StateUpdate.IN_PLACE);
+		return new ParticleParallelOptimization(concurrentConfig, new Random(seed), log);
+	}
+
+	public PSOFunction<Double> getFunction() {
+		return function;
+	}
+
+	public SwarmConfiguration getConfiguration() {
+		return config;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public int getProgress() {
+		return progress;
+	}
+	
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	public boolean hasMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,318 @@
+package swarm.pso.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.service.IterationListener;
+import swarm.pso.service.OptimizationEngine;
+import swarm.pso.service.SwarmOptimization;
+
+//A long-running server for optimization jobs, so a batch of runs pays for JVM startup and JIT warm-up once.
+//POST a JobRequest to /jobs and the response streams back as plain text lines while the job runs:
+//  queued <id> <estimated bytes>, started <id>, iteration <i> <best value> <evaluations> every progress iterations,
+//  then best <value>, position <x1,x2,...>, evaluations <count>, metrics <name> <value...> lines if the job asked
+//  for metrics, and done, or error <message> if the run failed.
+//A job that reaches its time limit still ends with done, with the best it found. So does one whose client went away,
+//which is stopped after the iteration in progress.
+//Jobs wait for admission until their estimated memory fits in the budget, then run on one shared OptimizationEngine.
+//GET /status reports the queue, GET /metrics exports running jobs to Prometheus (and they are JMX MBeans too, see
+//MonitoringExporter), and every other path is the Dashboard, where each job can be watched as job-<id>.
+//The server only listens on the loopback interface.
+public class JobServer {
+	public static final int DEFAULT_PORT = 8642;
+	public static final int MAX_WAITING = 100; // Jobs queued for admission before more are turned away
+	public static final int MAX_REQUEST_BYTES = 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final HttpServer server;
+	private final ExecutorService connections; // One thread per connected client, mostly waiting on its job
+	private final OptimizationEngine engine;
+	private final MemoryAdmission admission;
+	private final Dashboard dashboard = new Dashboard();
+	private final MonitoringExporter exporter = new MonitoringExporter();
+	private final AtomicLong jobIds = new AtomicLong();
+
+	public JobServer(int port, int engineThreads, long memoryBudget) throws IOException {
+		engine = new OptimizationEngine(engineThreads);
+		admission = new MemoryAdmission(memoryBudget, MAX_WAITING);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/jobs", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleJob(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/status", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleStatus(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		dashboard.register(server);
+		exporter.register(server);
+		connections = Executors.newCachedThreadPool();
+		server.setExecutor(connections);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	// The port actually bound, useful when the server was created on port 0
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	// Stops accepting connections, waits up to delay seconds for streaming jobs, then waits for queued runs
+	public void stop(int delay) {
+		server.stop(delay);
+		connections.shutdown();
+		engine.close();
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		String status = "engine-threads " + engine.getNumThreads() + "\n" +
+				"admitted " + admission.getAdmitted() + "\n" +
+				"waiting " + admission.getWaiting() + "\n" +
+				"memory-used " + admission.getUsed() + "\n" +
+				"memory-budget " + admission.getBudget() + "\n";
+		respond(exchange, 200, status);
+	}
+
+	private void handleJob(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "error POST a job\n");
+			return;
+		}
+		String body = readBody(exchange.getRequestBody());
+		if (body == null) {
+			respond(exchange, 413, "error Request is larger than " + MAX_REQUEST_BYTES + " bytes\n");
+			return;
+		}
+		final JobRequest request;
+		try {
+			request = JobRequest.parse(body);
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, "error " + e.getMessage() + "\n");
+			return;
+		}
+		long bytes = request.estimateBytes();
+		if (!admission.fits(bytes)) {
+			respond(exchange, 413, "error Job needs about " + bytes + " bytes, the budget is " + admission.getBudget() + "\n");
+			return;
+		}
+
+		long id = jobIds.incrementAndGet();
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(200, 0); // Chunked, lines are sent as they happen
+		Writer out = new OutputStreamWriter(exchange.getResponseBody(), UTF8);
+		line(out, "queued " + id + " " + bytes);
+		try {
+			if (!admission.acquire(bytes)) {
+				line(out, "error Too many jobs waiting, try again later");
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			line(out, "started " + id);
+			run(id, request, out);
+		} finally {
+			admission.release(bytes);
+		}
+	}
+
+	// Streams progress from the run's bookkeeping thread through a queue, so a slow client never holds up the run
+	private void run(long id, final JobRequest request, Writer out) throws IOException {
+		final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+		Logging log = new Logging(request.getConfiguration());
+		if (request.hasMetrics()) {
+			log.enableMetrics();
+		}
+		SwarmOptimization optimization = request.createOptimization(log);
+		dashboard.watch("job-" + id, optimization, request.getConfiguration(), log);
+		exporter.monitor("job-" + id, optimization, request.getConfiguration(), log);
+		if (request.getProgress() > 0) {
+			optimization.addIterationListener(new IterationListener() {
+				@Override
+				public void iterationCompleted(int iteration, double[] bestPosition, double bestValue, long evaluations) {
+					if ((iteration + 1) % request.getProgress() == 0) {
+						lines.add("iteration " + iteration + " " + bestValue + " " + evaluations);
+					}
+				}
+				
+				@Override
+				public void runCompleted() {
+					// The results are sent once the engine says the run is done
+				}
+				
+				@Override
+				public void runFailed(Throwable failure) {
+					// So is the failure
+				}
+			});
+		}
+		if (request.getTimeLimit() > 0) {
+			optimization.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(request.getTimeLimit()));
+		}
+		OptimizationEngine.Run run = engine.submit(optimization, request.getPriority(), request.getNumThreads());
+
+		boolean connected = true;
+		while (true) {
+			String next;
+			try {
+				next = lines.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopAndWait(run);
+				return;
+			}
+			if (next == null && run.isDone()) {
+				break; // A run is only done once its bookkeeping has finished, so every line is queued by now
+			}
+			if (next != null && connected) {
+				connected = send(out, next);
+				if (!connected) {
+					run.stop(); // Nobody is waiting for the result. The run still ends cleanly before its memory is released
+				}
+			}
+		}
+		while (!lines.isEmpty() && connected) {
+			connected = send(out, lines.poll());
+		}
+		if (!connected) {
+			return;
+		}
+
+		try {
+			List<Double> position = run.await();
+			StringBuilder sb = new StringBuilder("position ");
+			for (int d = 0; d < position.size(); d++) {
+				sb.append(d == 0 ? "" : ",").append(position.get(d));
+			}
+			line(out, "best " + optimization.getBestValue());
+			line(out, sb.toString());
+			line(out, "evaluations " + optimization.getEvaluationCount());
+			if (log.getMetrics() != null) {
+				for (String metric : log.getMetrics().summary().split("\\r?\\n")) {
+					line(out, "metrics " + metric);
+				}
+			}
+			line(out, "done");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			line(out, "error " + e);
+		}
+	}
+
+	// Stops the run and waits for it to end even if interrupted, since admission is released as soon as this returns.
+	// Once it has ended its log is only reachable from here: the dashboard keeps just the history of finished runs
+	private static void stopAndWait(OptimizationEngine.Run run) {
+		run.stop();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				run.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (RuntimeException e) {
+				break; // It ended by failing
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Whether the client is still there
+	private static boolean send(Writer out, String line) {
+		try {
+			line(out, line);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// A few short runs of every function, so the first jobs do not run in the interpreter
+	public void warmUp() throws InterruptedException {
+		for (int function = 0; function < 4; function++) {
+			JobRequest request = JobRequest.parse("function=" + function + "\nparticles=20\niterations=200\nthreads=" +
+					Math.min(2, engine.getNumThreads()));
+			engine.submit(request.createOptimization(new Logging(request.getConfiguration()))).await();
+		}
+	}
+
+	private static void line(Writer out, String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	// The request body, or null if it is too large
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+			body.write(buffer, 0, read);
+			if (body.size() > MAX_REQUEST_BYTES) {
+				return null;
+			}
+		}
+		return new String(body.toByteArray(), UTF8);
+	}
+
+	// Arguments, all optional: port, engine threads (default one per processor), memory budget in megabytes
+	// (default half the maximum heap)
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int engineThreads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long budget = args.length >= 3 ? Long.parseLong(args[2]) * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2;
+		JobServer server = new JobServer(port, engineThreads, budget);
+		server.warmUp();
+		server.start();
+		System.out.println("Listening on 127.0.0.1:" + server.getPort() + " with " + engineThreads +
+				" engine threads and a " + budget / (1024 * 1024) + " MB budget");
+	}
+}
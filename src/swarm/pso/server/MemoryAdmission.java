@@ -0,0 +1,105 @@
+package swarm.pso.server;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Admits jobs while their estimated memory fits in a budget, in the order they asked. A large job at the head of the
+//queue holds back smaller ones behind it, so it cannot be starved by a stream of small jobs.
+public class MemoryAdmission {
+	private final long budget; // Bytes all admitted jobs may use together
+	private final int maxWaiting; // Jobs allowed to queue for admission before more are turned away
+
+	private final ReentrantLock lock = new ReentrantLock(); // Guards everything below
+	private final Condition released = lock.newCondition();
+	private final Queue<Object> waiting = new ArrayDeque<Object>(); // A ticket per waiting job, in arrival order
+	private long used = 0;
+	private int admitted = 0;
+
+	public MemoryAdmission(long budget, int maxWaiting) {
+		if (budget <= 0 || maxWaiting < 0) {
+			throw new IllegalArgumentException("Need a positive budget");
+		}
+		this.budget = budget;
+		this.maxWaiting = maxWaiting;
+	}
+
+	// Whether a job of this size could ever be admitted
+	public boolean fits(long bytes) {
+		return bytes <= budget;
+	}
+
+	// Returns false straight away if the queue is full, otherwise waits for the job's turn and for bytes to be free
+	public boolean acquire(long bytes) throws InterruptedException {
+		if (!fits(bytes)) {
+			throw new IllegalArgumentException("A job of " + bytes + " bytes can never fit in " + budget);
+		}
+		Object ticket = new Object();
+		lock.lock();
+		try {
+			if (waiting.size() >= maxWaiting && (waiting.size() > 0 || used + bytes > budget)) {
+				return false;
+			}
+			waiting.add(ticket);
+			try {
+				while (waiting.peek() != ticket || used + bytes > budget) {
+					released.await();
+				}
+			} catch (InterruptedException e) {
+				waiting.remove(ticket);
+				released.signalAll(); // The job behind may now be at the head
+				throw e;
+			}
+			waiting.remove();
+			used += bytes;
+			admitted++;
+			released.signalAll(); // The next job may fit as well
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void release(long bytes) {
+		lock.lock();
+		try {
+			used -= bytes;
+			admitted--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public long getUsed() {
+		lock.lock();
+		try {
+			return used;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getAdmitted() {
+		lock.lock();
+		try {
+			return admitted;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getWaiting() {
+		lock.lock();
+		try {
+			return waiting.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
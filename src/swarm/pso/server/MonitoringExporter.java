@@ -0,0 +1,210 @@
+package swarm.pso.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import swarm.pso.logging.LatencyHistogram;
+import swarm.pso.logging.Logging;
+import swarm.pso.logging.RunMetrics;
+import swarm.pso.service.SwarmOptimization;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Exposes every monitored run to existing monitoring: as a JMX MBean named swarm.pso:type=Optimization,name=<run>
+//on the platform MBean server, and in the Prometheus text format at /metrics, one series per run labelled run="<run>".
+//Monitor a run before optimizing it. It is dropped from both once it completes, so a scrape only sees live runs.
+//Runs that record RunMetrics also export their phase times, CPU time, allocation and iteration latency.
+//Every value comes from a RunMonitor's volatile fields or RunMetrics' counters, never from the optimizer itself.
+public class MonitoringExporter {
+	public static final int DEFAULT_PORT = 8644;
+	public static final String DOMAIN = "swarm.pso";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+	private final ConcurrentMap<String, RunMonitor> runs = new ConcurrentHashMap<String, RunMonitor>();
+	private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+	private HttpServer server; // Only if started on a port of its own
+
+	// Serves /metrics from a server of its own. Use register instead to share a server
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(Executors.newSingleThreadExecutor()); // Scrapes are short
+		register(server);
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop(int delay) {
+		server.stop(delay);
+	}
+
+	public void register(HttpServer server) {
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					byte[] bytes = scrape().getBytes(UTF8);
+					exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(bytes);
+					out.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	// Call before the run starts. A run monitored under a name already in use replaces the one before it
+	public RunMonitor monitor(String name, SwarmOptimization optimization, SwarmConfiguration config, Logging log) {
+		RunMonitor monitor = new RunMonitor(name, this, config, log);
+		RunMonitor replaced = runs.put(name, monitor);
+		if (replaced != null) {
+			unregister(replaced);
+		}
+		try {
+			ObjectName objectName = objectName(name);
+			if (mbeans.isRegistered(objectName)) {
+				mbeans.unregisterMBean(objectName);
+			}
+			mbeans.registerMBean(monitor, objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register " + name + " with JMX", e);
+		}
+		optimization.addIterationListener(monitor);
+		return monitor;
+	}
+
+	void remove(RunMonitor monitor) {
+		if (runs.remove(monitor.getName(), monitor)) {
+			unregister(monitor);
+		}
+	}
+
+	private void unregister(RunMonitor monitor) {
+		try {
+			mbeans.unregisterMBean(objectName(monitor.getName()));
+		} catch (JMException e) {
+			// Already gone
+		}
+	}
+
+	private static ObjectName objectName(String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Optimization,name=" + ObjectName.quote(name));
+	}
+
+	// The Prometheus text exposition format, grouped by metric as it requires
+	String scrape() {
+		RunMonitor[] monitors = runs.values().toArray(new RunMonitor[0]);
+		StringBuilder sb = new StringBuilder();
+		header(sb, "pso_iteration", "gauge", "Latest iteration logged");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_iteration", monitor, "", monitor.getIteration());
+		}
+		header(sb, "pso_best_value", "gauge", "Best value found so far");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_best_value", monitor, "", monitor.getBestValue());
+		}
+		header(sb, "pso_error", "gauge", "Best value less the function's known solution");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_error", monitor, "", monitor.getError());
+		}
+		header(sb, "pso_evaluations_total", "counter", "Objective function evaluations");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_evaluations_total", monitor, "", monitor.getEvaluations());
+		}
+		header(sb, "pso_evaluations_per_second", "gauge", "Evaluation rate over the last second of the run");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_evaluations_per_second", monitor, "", monitor.getEvaluationsPerSecond());
+		}
+		header(sb, "pso_thread_utilisation", "gauge", "Share of the latest iteration threads spent updating particles");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_thread_utilisation", monitor, "", monitor.getThreadUtilisation());
+		}
+		header(sb, "pso_diversity", "gauge", "Mean particle distance from the centroid over the domain diagonal");
+		for (RunMonitor monitor : monitors) {
+			sample(sb, "pso_diversity", monitor, "", monitor.getDiversity());
+		}
+
+		header(sb, "pso_phase_seconds_total", "counter", "Thread time in each phase of the run");
+		for (RunMonitor monitor : monitors) {
+			RunMetrics metrics = monitor.getMetrics();
+			for (int i = 0; metrics != null && i < RunMetrics.Phase.values().length; i++) {
+				RunMetrics.Phase phase = RunMetrics.Phase.values()[i];
+				sample(sb, "pso_phase_seconds_total", monitor, ",phase=\"" + phase.name().toLowerCase() + "\"",
+						metrics.getPhaseTime(phase) / 1e9);
+			}
+		}
+		header(sb, "pso_cpu_seconds_total", "counter", "CPU time of the threads working for the run");
+		for (RunMonitor monitor : monitors) {
+			if (monitor.getMetrics() != null && monitor.getMetrics().getCpuTime() >= 0) {
+				sample(sb, "pso_cpu_seconds_total", monitor, "", monitor.getMetrics().getCpuTime() / 1e9);
+			}
+		}
+		header(sb, "pso_allocated_bytes_total", "counter", "Bytes allocated by the threads working for the run");
+		for (RunMonitor monitor : monitors) {
+			if (monitor.getMetrics() != null && monitor.getMetrics().getAllocatedBytes() >= 0) {
+				sample(sb, "pso_allocated_bytes_total", monitor, "", monitor.getMetrics().getAllocatedBytes());
+			}
+		}
+		header(sb, "pso_iteration_seconds", "summary", "Iteration latency");
+		for (RunMonitor monitor : monitors) {
+			if (monitor.getMetrics() == null) {
+				continue;
+			}
+			LatencyHistogram latency = monitor.getMetrics().getIterationLatency();
+			for (double quantile : QUANTILES) {
+				sample(sb, "pso_iteration_seconds", monitor, ",quantile=\"" + quantile + "\"",
+						latency.getPercentile(quantile) / 1e9);
+			}
+			sample(sb, "pso_iteration_seconds_sum", monitor, "", latency.getTotal() / 1e9);
+			sample(sb, "pso_iteration_seconds_count", monitor, "", latency.getCount());
+		}
+		return sb.toString();
+	}
+
+	private static void header(StringBuilder sb, String metric, String type, String help) {
+		sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String metric, RunMonitor monitor, String labels, double value) {
+		sb.append(metric).append("{run=\"").append(escape(monitor.getName())).append('"').append(labels).append("} ");
+		if (Double.isNaN(value)) {
+			sb.append("NaN");
+		}
+		else if (Double.isInfinite(value)) {
+			sb.append(value > 0 ? "+Inf" : "-Inf");
+		}
+		else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			sb.append((long) value);
+		}
+		else {
+			sb.append(value);
+		}
+		sb.append('\n');
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
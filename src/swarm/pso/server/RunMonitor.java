@@ -0,0 +1,167 @@
+package swarm.pso.server;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.logging.RunMetrics;
+import swarm.pso.service.IterationListener;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//The live state of one run for a MonitoringExporter. It listens to the run's iterations and keeps what it learns in
+//volatile fields, written only on the run's bookkeeping thread, so reading it never touches the optimizer or its locks.
+//Diversity needs every particle's position, so it is only worked out once per DIVERSITY_INTERVAL of run time, from at
+//most DIVERSITY_PARTICLES evenly spaced particles.
+public class RunMonitor implements RunMonitorMBean, IterationListener {
+	public static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+	public static final long DIVERSITY_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	public static final int DIVERSITY_PARTICLES = 1000;
+
+	private final String name;
+	private final MonitoringExporter exporter; // Told when the run completes or fails
+	private final Logging log;
+	private final double solution;
+	private final int dimensions;
+	private final double[] lowerBounds;
+	private final double[] upperBounds;
+	private final double diagonal;
+
+	private volatile int iteration = -1;
+	private volatile double bestValue = Double.NaN;
+	private volatile long evaluations = 0;
+	private volatile double evaluationRate = Double.NaN;
+	private volatile double utilisation = Double.NaN;
+	private volatile double diversity = Double.NaN;
+
+	// Only used on the bookkeeping thread. Times are run times, as logged
+	private long windowStart = 0; // The rate is measured from here
+	private long windowEvaluations = 0;
+	private long lastTime = 0; // The end of the last iteration
+	private long lastDiversity = Long.MIN_VALUE;
+
+	RunMonitor(String name, MonitoringExporter exporter, SwarmConfiguration config, Logging log) {
+		this.name = name;
+		this.exporter = exporter;
+		this.log = log;
+		solution = config.getSolution() == null ? 0 : config.getSolution();
+		dimensions = config.getDimensions();
+		lowerBounds = toArray(config.getLowerBounds());
+		upperBounds = toArray(config.getUpperBounds());
+		double sum = 0;
+		for (int d = 0; d < dimensions; d++) {
+			sum += (upperBounds[d] - lowerBounds[d]) * (upperBounds[d] - lowerBounds[d]);
+		}
+		diagonal = Math.sqrt(sum);
+	}
+
+	private static double[] toArray(List<Double> list) {
+		double[] array = new double[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	@Override
+	public void iterationCompleted(int iteration, double[] bestPosition, double bestValue, long evaluations) {
+		long time = log.getTime(iteration);
+		if (time - windowStart >= RATE_WINDOW || Double.isNaN(evaluationRate)) {
+			if (time > windowStart) {
+				evaluationRate = (evaluations - windowEvaluations) * 1e9 / (time - windowStart);
+			}
+			if (time - windowStart >= RATE_WINDOW) {
+				windowStart = time;
+				windowEvaluations = evaluations;
+			}
+		}
+		long busy = log.getMeanBusyTime(iteration); // Only optimizers with threads to balance record it
+		if (busy > 0 && time > lastTime) {
+			utilisation = Math.min(1, (double) busy / (time - lastTime));
+		}
+		lastTime = time;
+		if (lastDiversity == Long.MIN_VALUE || time - lastDiversity >= DIVERSITY_INTERVAL) {
+			diversity = diversity(iteration);
+			lastDiversity = time;
+		}
+		this.bestValue = bestValue;
+		this.evaluations = evaluations;
+		this.iteration = iteration;
+	}
+
+	@Override
+	public void runCompleted() {
+		exporter.remove(this);
+	}
+
+	@Override
+	public void runFailed(Throwable failure) {
+		exporter.remove(this);
+	}
+
+	private double diversity(int iteration) {
+		int particles = log.getParticleCount();
+		int stride = Math.max(1, (particles + DIVERSITY_PARTICLES - 1) / DIVERSITY_PARTICLES);
+		int count = (particles + stride - 1) / stride;
+		double[] centroid = new double[dimensions];
+		for (int p = 0; p < particles; p += stride) {
+			for (int d = 0; d < dimensions; d++) {
+				centroid[d] += log.getParticlePosition(iteration, p, d) / count;
+			}
+		}
+		double distance = 0;
+		for (int p = 0; p < particles; p += stride) {
+			double sum = 0;
+			for (int d = 0; d < dimensions; d++) {
+				double x = log.getParticlePosition(iteration, p, d) - centroid[d];
+				sum += x * x;
+			}
+			distance += Math.sqrt(sum);
+		}
+		return diagonal == 0 ? 0 : distance / count / diagonal;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getIteration() {
+		return iteration;
+	}
+
+	@Override
+	public double getBestValue() {
+		return bestValue;
+	}
+
+	@Override
+	public double getError() {
+		return bestValue - solution;
+	}
+
+	@Override
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	@Override
+	public double getEvaluationsPerSecond() {
+		return evaluationRate;
+	}
+
+	@Override
+	public double getThreadUtilisation() {
+		return utilisation;
+	}
+
+	@Override
+	public double getDiversity() {
+		return diversity;
+	}
+
+	// The run's own metrics, if it records them
+	RunMetrics getMetrics() {
+		return log.getMetrics();
+	}
+}
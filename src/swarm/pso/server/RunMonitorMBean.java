@@ -0,0 +1,20 @@
+package swarm.pso.server;
+
+//What a RunMonitor shows over JMX. NaN where a measure is not known yet, or not recorded by the optimizer
+public interface RunMonitorMBean {
+	public String getName();
+
+	public int getIteration(); // The latest iteration logged, -1 before the first
+
+	public double getBestValue();
+
+	public double getError(); // Best value less the function's known solution
+
+	public long getEvaluations();
+
+	public double getEvaluationsPerSecond(); // Over the last second or so of the run
+
+	public double getThreadUtilisation(); // Share of the latest iteration the mean thread spent updating particles
+
+	public double getDiversity(); // Mean distance of the particles from their centroid, over the domain's diagonal
+}
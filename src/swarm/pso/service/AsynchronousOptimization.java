@@ -0,0 +1,518 @@
+package swarm.pso.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.logging.RunMetrics;
+import swarm.pso.logging.RunMetrics.Phase;
+import swarm.pso.random.Randoms;
+import swarm.pso.random.SplitMixRandom;
+import swarm.pso.structures.SwarmState;
+import swarm.pso.structures.config.AsynchronousSwarmConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
+
+//Steady-state FDR PSO without iterations: a thread takes the least updated particle that is ready, moves and
+//evaluates it, and hands it back, so no thread ever waits for a slow evaluation of another particle.
+//Every update reads the latest published global best and whatever personal bests the other particles have now,
+//which may be mid-rewrite, as in ParticleParallelOptimization's default mode.
+//Runs until the configuration's evaluation budget is spent. Results depend on thread timing.
+public class AsynchronousOptimization implements SwarmOptimization {
+	private final AsynchronousSwarmConfiguration config; // config has info about the function and particle behavior
+
+	private final SwarmState swarm; // The primitive arrays containing each particle's state information.
+									// A particle is only written by the thread that took it.
+
+	private final AtomicReference<BestSnapshot> best = new AtomicReference<BestSnapshot>(); // The global best, replaced
+																							// as a whole so it can be
+																							// read without locking
+
+	private final double[] lowerBounds; // Unboxed copies of the configuration's bounds for the inner loops
+	private final double[] upperBounds;
+	private final double[] maximumVelocity;
+
+	private final ReentrantLock schedule = new ReentrantLock(); // Guards the fields below, held only to take or return a particle
+	private final Condition particleReturned = schedule.newCondition(); // Signalled whenever a particle is handed back
+	private final PriorityQueue<Integer> ready; // Particles nobody is updating, least updated first
+	private final int[] updates; // Number of completed updates of each particle
+	private final int[] inFlight; // Updates completed by the particle each thread is updating, MAX_VALUE when idle
+	private long evaluationsStarted = 0; // Including the first evaluation of every particle
+	private long evaluationsCompleted = 0;
+	private final long evaluationsPerGeneration; // Logging records a generation each time this many more updates complete
+
+	private volatile boolean stopped = false; // Set by stop(), a passed deadline or an interrupt, and never cleared
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // The first exception a
+																						// worker threw
+	private volatile Long deadline = null; // In System.nanoTime() terms, null for none
+
+	private final Random rand; // RNG used to initialize the swarm and seed particleRandoms
+	private final Random[] particleRandoms; // One generator per particle, so threads never share one
+
+	private final Logging log; // Stores some state information
+	private final RunMetrics metrics; // The log's metrics, null when they are off. Each thread has a recorder
+	private final RunMetrics.Recorder bookkeeping; // Times the pipeline's tasks, null when metrics are off
+	private final IterationPipeline pipeline = new IterationPipeline(); // Logs each generation off the scheduling lock
+	private final Queue<Runnable> endedGenerations = new ConcurrentLinkedQueue<Runnable>(); // Bookkeeping tasks, queued
+																							// in order under the lock
+	private final ReentrantLock submitting = new ReentrantLock(); // Held by the one thread handing them to the pipeline
+
+	public AsynchronousOptimization(AsynchronousSwarmConfiguration config, Logging log) {
+		this(config, new Random(), log);
+	}
+
+	public AsynchronousOptimization(AsynchronousSwarmConfiguration config, Random rand, Logging log) {
+		if (config.getFdrWeight() != 0.0 && config.getFdrStrategy() == FdrStrategy.NEIGHBOURHOOD) {
+			throw new IllegalArgumentException("The neighbourhood FDR strategy needs the swarm to pause to rebuild its index");
+		}
+		this.config = config;
+		this.rand = rand;
+		this.log = log;
+
+		lowerBounds = toArray(config.getLowerBounds());
+		upperBounds = toArray(config.getUpperBounds());
+		maximumVelocity = toArray(config.getMaximumVelocity());
+
+		metrics = log.getMetrics();
+		bookkeeping = metrics == null ? null : metrics.newRecorder("bookkeeping");
+		log.setStartTime();
+
+		swarm = new SwarmState(config.getNumParticles(), config.getDimensions());
+
+		//Initialize particles
+		int initialBest = 0;
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			int offset = swarm.offset(p);
+			initialPosition(swarm.getPositions(), offset);
+			swarm.getValues()[p] = config.function(swarm.getPositions(), offset);
+			evaluationsStarted++;
+			evaluationsCompleted++;
+			initialVelocity(swarm.getVelocities(), offset);
+			swarm.updateBest(p);
+			if (swarm.getValue(p) < swarm.getValue(initialBest)) {
+				initialBest = p;
+			}
+		}
+		best.set(new BestSnapshot(swarm, initialBest));
+		evaluationsPerGeneration = config.getNumParticles();
+
+		long rootSeed = rand.nextLong();
+		particleRandoms = new Random[config.getNumParticles()];
+		for (int p = 0; p < particleRandoms.length; p++) {
+			particleRandoms[p] = SplitMixRandom.stream(rootSeed, p);
+		}
+
+		updates = new int[config.getNumParticles()];
+		ready = new PriorityQueue<Integer>(config.getNumParticles(), new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				if (updates[a] != updates[b]) {
+					return updates[a] < updates[b] ? -1 : 1;
+				}
+				return a.compareTo(b);
+			}
+		});
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			ready.add(p);
+		}
+		inFlight = new int[config.getNumThreads()];
+		for (int t = 0; t < inFlight.length; t++) {
+			inFlight[t] = Integer.MAX_VALUE;
+		}
+	}
+
+	private FitnessDistanceSearch createFdrSearch() {
+		if (config.getFdrStrategy() == FdrStrategy.SAMPLED) {
+			return new SampledFitnessDistanceSearch(swarm, config.getFdrCandidates(), particleRandoms);
+		}
+		else {
+			return new FitnessDistanceSearch(swarm);
+		}
+	}
+
+	private static double[] toArray(List<Double> list) {
+		double[] array = new double[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	private void initialPosition(double[] position, int offset) {
+		for (int d = 0; d < config.getDimensions(); d++) {
+			double lowPos = lowerBounds[d];
+			double highPos = upperBounds[d];
+			position[offset + d] = lowPos+rand.nextDouble()*(highPos-lowPos);
+		}
+	}
+
+	private void initialVelocity(double[] velocity, int offset) {
+		for (int d = 0; d < config.getDimensions(); d++) {
+			double lowVel = -maximumVelocity[d];
+			double highVel = maximumVelocity[d];
+			velocity[offset + d] = lowVel+rand.nextDouble()*(highVel-lowVel);
+		}
+	}
+
+	// Swap in a new snapshot, retrying only while other threads keep publishing worse bests
+	private void publishGlobalBest(int particle) {
+		double value = swarm.getValue(particle);
+		BestSnapshot current = best.get();
+		if (!(value < current.value)) {
+			return;
+		}
+		BestSnapshot improved = new BestSnapshot(swarm, particle);
+		while (!best.compareAndSet(current, improved)) {
+			current = best.get();
+			if (!(value < current.value)) {
+				return;
+			}
+		}
+	}
+
+	private List<Double> bestPositionList() {
+		double[] bestPosition = best.get().position;
+		List<Double> position = new ArrayList<Double>(bestPosition.length);
+		for (double x : bestPosition) {
+			position.add(x);
+		}
+		return position;
+	}
+
+	@Override
+	public double getBestValue() {
+		return best.get().value;
+	}
+
+	@Override
+	public List<Double> getBestPosition() {
+		return bestPositionList();
+	}
+
+	// Updates already taken still complete, no new ones start
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	@Override
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	// Whether to stop handing out particles
+	private boolean shouldStop() {
+		Long end = deadline;
+		if (Thread.currentThread().isInterrupted() || (end != null && System.nanoTime() - end >= 0)) {
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	// Evaluations started so far, which is the budget once the run is over
+	@Override
+	public long getEvaluationCount() {
+		schedule.lock();
+		try {
+			return evaluationsStarted;
+		} finally {
+			schedule.unlock();
+		}
+	}
+
+	// Generations are told in order as each generation's worth of updates completes
+	@Override
+	public void addIterationListener(IterationListener listener) {
+		pipeline.addListener(listener);
+	}
+
+	// performs the optimization algorithm
+	@Override
+	public List<Double> optimize() {
+		return optimize(0);
+	}
+
+	// performs optimization with a delay after every update for animation
+	@Override
+	public List<Double> optimize(int delay) {
+		startParticleList(delay);
+		Throwable t = failure.get(); // A worker's exception would otherwise be lost in the executor
+		if (t == null) {
+			pipeline.finish();
+			return bestPositionList();
+		}
+		pipeline.fail(t); // Listeners hear that the run ended even when it failed
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		throw (Error) t;
+	}
+
+	// Starts threads that keep updating particles until the budget is spent
+	private void startParticleList(final int delay) {
+		ExecutorService es = Executors.newFixedThreadPool(config.getNumThreads());
+		for (int t = 0; t < config.getNumThreads(); t++) {
+			final int thread = t;
+			es.execute(new Runnable() {
+				public void run() {
+					FitnessDistanceSearch fdrSearch = createFdrSearch(); // Scratch space for this thread only
+					int[] fdrSelections = new int[config.getDimensions()];
+					double[] draws = new double[3 * config.getDimensions()];
+					RunMetrics.Recorder recorder = metrics == null ? null : metrics.newRecorder("worker-" + thread);
+					if (recorder != null) {
+						recorder.beginWork();
+					}
+					try {
+						long start = startTime(recorder);
+						for (int particle = takeParticle(thread); particle >= 0; particle = takeParticle(thread)) {
+							addTime(recorder, Phase.WAIT, start); // Taking and returning particles, mostly for the lock
+							updateParticle(particle, fdrSearch, fdrSelections, draws, recorder);
+							start = startTime(recorder);
+							returnParticle(thread, particle);
+							if (delay > 0) { //if delay is positive, sleep to allow animation
+								Thread.sleep(delay);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						stop(); // The other threads stop taking particles too, and the run ends early
+					} catch (RuntimeException e) {
+						failed(e);
+					} catch (Error e) {
+						failed(e);
+					} finally {
+						if (recorder != null) {
+							recorder.endWork();
+						}
+					}
+				}
+			});
+		}
+		es.shutdown(); // Terminate and join
+		boolean interrupted = false;
+		while (!es.isTerminated()) {
+			try {
+				es.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+				stop(); // Updates in progress complete, so every particle is left in a consistent state
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// A worker that threw never returns its particle, which threads held back by the drift bound may be waiting for.
+	// Stopping the run and waking them lets every thread leave, and optimize() rethrows the first such exception
+	private void failed(Throwable t) {
+		failure.compareAndSet(null, t);
+		stop();
+		schedule.lock();
+		try {
+			particleReturned.signalAll();
+		} finally {
+			schedule.unlock();
+		}
+	}
+
+	// Returns the least updated ready particle, or -1 once the budget is spent or the run is stopped. With a drift bound, waits while that
+	// particle is too far ahead of the least updated particle, which some other thread must be updating.
+	private int takeParticle(int thread) throws InterruptedException {
+		schedule.lock();
+		try {
+			while (evaluationsStarted < config.getEvaluationBudget() && !shouldStop()) {
+				Integer particle = ready.peek();
+				if (particle != null && (config.getMaxDrift() == 0 || updates[particle] - leastUpdates() < config.getMaxDrift())) {
+					ready.poll();
+					inFlight[thread] = updates[particle];
+					evaluationsStarted++;
+					return particle;
+				}
+				particleReturned.await();
+			}
+			return -1;
+		} finally {
+			schedule.unlock();
+		}
+	}
+
+	// Fewest updates completed by any particle, ready or being updated
+	private int leastUpdates() {
+		int least = ready.isEmpty() ? Integer.MAX_VALUE : updates[ready.peek()];
+		for (int t = 0; t < inFlight.length; t++) {
+			least = Math.min(least, inFlight[t]);
+		}
+		return least;
+	}
+
+	// Make a particle available again, and log the swarm's best each time a generation's worth of updates completes
+	private void returnParticle(int thread, int particle) {
+		schedule.lock();
+		try {
+			updates[particle]++;
+			inFlight[thread] = Integer.MAX_VALUE;
+			ready.add(particle);
+			evaluationsCompleted++;
+			long generation = evaluationsCompleted / evaluationsPerGeneration - 2; // The first generation is initialization
+			if (evaluationsCompleted % evaluationsPerGeneration == 0 && generation < config.getNumIterations()) {
+				long time = System.nanoTime();
+				if (metrics != null) {
+					metrics.iterationEnded((int) generation, time, evaluationsCompleted);
+				}
+				endGeneration((int) generation, best.get(), time, evaluationsCompleted);
+			}
+			particleReturned.signalAll();
+		} finally {
+			schedule.unlock();
+		}
+		submitEndedGenerations();
+	}
+
+	// Hands the queued generations to the pipeline in order, from one thread at a time. Submitting waits for the
+	// previous generation's bookkeeping, so it is done off the lock, and a thread that finds another one submitting
+	// leaves its generation to that thread rather than wait too. Checking the queue again after unlocking catches a
+	// generation queued just as the last submitter finished
+	private void submitEndedGenerations() {
+		while (!endedGenerations.isEmpty() && submitting.tryLock()) {
+			try {
+				Runnable task;
+				while ((task = endedGenerations.poll()) != null) {
+					pipeline.submit(task);
+				}
+			} finally {
+				submitting.unlock();
+			}
+		}
+	}
+
+	// Log a generation's best and tell the listeners on the pipeline, so the threads waiting for the lock are not
+	// held up by it. Queued with the lock held, so generations reach the pipeline in order
+	private void endGeneration(final int generation, final BestSnapshot snapshot, final long time, final long evaluationCount) {
+		endedGenerations.add(new Runnable() {
+			@Override
+			public void run() {
+				long start = startTime(bookkeeping);
+				log.addBestPosition(generation, snapshot.position, snapshot.value);
+				log.addTime(generation, time);
+				pipeline.iterationCompleted(generation, snapshot.position, snapshot.value, evaluationCount);
+				addTime(bookkeeping, Phase.LOGGING, start);
+			}
+		});
+	}
+
+	// Inertia falls linearly with the particle's own progress through its share of the budget
+	private double inertia(int particle) {
+		double updatesPerParticle = (double) (config.getEvaluationBudget() - config.getNumParticles()) / config.getNumParticles();
+		return Math.max(config.getMinInertia(), (config.getInertia() - config.getMinInertia()) *
+				(updatesPerParticle - updates[particle]) / updatesPerParticle + config.getMinInertia());
+	}
+
+	private void updateParticle(int particle, FitnessDistanceSearch fdrSearch, int[] fdrSelections, double[] draws,
+			RunMetrics.Recorder recorder) {
+		int offset = swarm.offset(particle);
+		int update = updates[particle]; // Only this thread changes it while the particle is taken
+		if (recorder != null) {
+			recorder.beginParticle();
+		}
+		calculateVelocity(particle, inertia(particle), fdrSearch, fdrSelections, draws, recorder);
+		calculatePosition(particle);
+		endPhase(recorder, Phase.MOVE);
+
+		swarm.getValues()[particle] = config.function(swarm.getPositions(), offset);
+		endPhase(recorder, Phase.EVALUATE);
+		if (swarm.getValue(particle) < swarm.getBestValue(particle)) {
+			swarm.updateBest(particle);
+		}
+		publishGlobalBest(particle);
+		endPhase(recorder, Phase.SELECT);
+
+		if (update < config.getNumIterations()) {
+			log.addParticlePosition(update, particle, swarm.getPositions(), offset);
+			endPhase(recorder, Phase.LOGGING);
+		}
+	}
+
+	// Metrics, each a null check when they are off. See RunMetrics.Recorder
+	private static void endPhase(RunMetrics.Recorder recorder, Phase phase) {
+		if (recorder != null) {
+			recorder.endPhase(phase);
+		}
+	}
+
+	private static long startTime(RunMetrics.Recorder recorder) {
+		return recorder != null ? System.nanoTime() : 0;
+	}
+
+	private static void addTime(RunMetrics.Recorder recorder, Phase phase, long start) {
+		if (recorder != null) {
+			recorder.add(phase, System.nanoTime() - start);
+		}
+	}
+
+	private void calculatePosition(int particle) {
+		double[] position = swarm.getPositions();
+		double[] velocity = swarm.getVelocities();
+		int offset = swarm.offset(particle);
+
+		for (int d = 0; d < config.getDimensions(); d++) {
+			double dPos = position[offset + d] + velocity[offset + d];
+			position[offset + d] = Math.min(upperBounds[d], Math.max(lowerBounds[d], dPos));
+			if (position[offset + d] != dPos) {
+				velocity[offset + d] = -velocity[offset + d];
+			}
+		}
+	}
+
+	private void calculateVelocity(int particle, double inertia, FitnessDistanceSearch fdrSearch, int[] fdrSelections,
+			double[] draws, RunMetrics.Recorder recorder) {
+		double[] velocity = swarm.getVelocities();
+		double[] position = swarm.getPositions();
+		double[] bestPositions = swarm.getBestPositions();
+		double[] bestPosition = best.get().position;
+		int offset = swarm.offset(particle);
+		if (config.getFdrWeight() != 0.0) {
+			fdrSearch.search(particle, fdrSelections);
+			endPhase(recorder, Phase.FDR_SEARCH);
+		}
+		Randoms.fill(particleRandoms[particle], draws, 0, draws.length);
+		for (int d = 0; d < config.getDimensions(); d++) {
+			int fdrIndex;
+			if (config.getFdrWeight() != 0.0) {
+				fdrIndex = swarm.offset(fdrSelections[d]) + d;
+			}
+			else {
+				fdrIndex = offset + d;
+			}
+
+			double dPosition = position[offset + d];
+			double dVelocity = inertia * velocity[offset + d] +
+					draws[3*d] * config.getSelfWeight() * (bestPositions[offset + d] - dPosition) +
+					draws[3*d + 1] * config.getBestWeight() * (bestPosition[d] - dPosition) +
+					draws[3*d + 2] * config.getFdrWeight() * (bestPositions[fdrIndex] - dPosition);
+			velocity[offset + d] = Math.signum(dVelocity) * Math.min(maximumVelocity[d], Math.abs(dVelocity));
+		}
+	}
+
+	// An immutable global best. Readers can use its position without copying, since it is never written again
+	private static class BestSnapshot {
+		private final double[] position;
+		private final double value;
+
+		BestSnapshot(SwarmState swarm, int particle) {
+			position = new double[swarm.getDimensions()];
+			swarm.copyPosition(particle, position);
+			value = swarm.getValue(particle);
+		}
+	}
+}
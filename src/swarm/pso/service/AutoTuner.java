@@ -0,0 +1,208 @@
+package swarm.pso.service;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.Scheduling;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Chooses how to run a configuration: sequentially, or in parallel with some number of threads, scheduling and chunk
+//size. It times the function on sample points, then times a few calibration iterations of the real swarm with the
+//sequential optimizer and with the parallel optimizer at each candidate thread count, and keeps the fastest.
+//Parallel runs only win if they beat the sequential one by a margin, since small swarms spend more on synchronizing
+//than they save, and large swarms of cheap evaluations stop scaling once memory bandwidth runs out.
+public class AutoTuner {
+	public static final int CALIBRATION_ITERATIONS = 4; // Per candidate. The first one includes setup and is not counted
+	public static final int EVALUATION_SAMPLES = 200; // Points the function is timed on, at most one per particle
+	public static final double PARALLEL_MARGIN = 0.9; // A parallel run must take less than this fraction of the sequential time
+	public static final double UNEVEN_VARIATION = 0.5; // Evaluation times varying more than this (interquartile range
+														// over median) are balanced by work stealing
+	public static final double MIN_UNEVEN_NANOS = 1000; // Cheaper evaluations are mostly timer noise, and too cheap to
+														// unbalance threads however much they vary
+	public static final long TARGET_CHUNK_NANOS = 20000; // Work stealing ranges should take at least this long to update
+
+	private static final long CALIBRATION_SEED = 7100555322108534535L; // Every candidate follows the same trajectory
+
+	private final SwarmConfiguration config;
+	private final int maxThreads;
+
+	public AutoTuner(SwarmConfiguration config) {
+		this(config, Runtime.getRuntime().availableProcessors());
+	}
+
+	public AutoTuner(SwarmConfiguration config, int maxThreads) {
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		this.config = config;
+		this.maxThreads = maxThreads;
+	}
+
+	public Tuning tune() {
+		int numParticles = config.getNumParticles();
+		SwarmConfiguration calibration = new SwarmConfiguration(config, numParticles, CALIBRATION_ITERATIONS);
+
+		timeIteration(calibration); // Warm up, so the first candidate is not also timing the compiler
+		double[] evaluation = timeEvaluations();
+		double sequentialNanos = timeIteration(calibration);
+		double particleNanos = sequentialNanos / numParticles;
+		Scheduling scheduling = evaluation[0] >= MIN_UNEVEN_NANOS && evaluation[1] > UNEVEN_VARIATION ?
+				Scheduling.WORK_STEALING : Scheduling.STATIC;
+
+		int[] threadCounts = candidateThreadCounts(Math.min(maxThreads, numParticles));
+		double[] parallelNanos = new double[threadCounts.length];
+		int fastest = 0;
+		for (int c = 0; c < threadCounts.length; c++) {
+			parallelNanos[c] = timeIteration(concurrent(calibration, threadCounts[c], scheduling, particleNanos));
+			if (parallelNanos[c] < parallelNanos[fastest]) {
+				fastest = c;
+			}
+		}
+
+		ConcurrentSwarmConfiguration concurrentConfig = concurrent(config, threadCounts[fastest], scheduling, particleNanos);
+		boolean sequential = !(parallelNanos[fastest] < PARALLEL_MARGIN * sequentialNanos);
+		return new Tuning(config, concurrentConfig, sequential, evaluation[0], evaluation[1],
+				Math.max(0, particleNanos - evaluation[0]), sequentialNanos, threadCounts, parallelNanos);
+	}
+
+	// 1, 2, 4 ... up to and including maxThreads
+	private static int[] candidateThreadCounts(int maxThreads) {
+		int count = 1;
+		for (int t = 1; t < maxThreads; t *= 2) {
+			count++;
+		}
+		int[] threadCounts = new int[count];
+		for (int c = 0, t = 1; c < count; c++, t *= 2) {
+			threadCounts[c] = Math.min(t, maxThreads);
+		}
+		return threadCounts;
+	}
+
+	// Ranges small enough to balance, but each worth at least TARGET_CHUNK_NANOS of updates
+	private static ConcurrentSwarmConfiguration concurrent(SwarmConfiguration config, int numThreads,
+			Scheduling scheduling, double particleNanos) {
+		int chunkSize = (int) Math.ceil(TARGET_CHUNK_NANOS / Math.max(1, particleNanos));
+		chunkSize = Math.max(1, Math.min(chunkSize, config.getNumParticles() / numThreads));
+		return new ConcurrentSwarmConfiguration(new ConcurrentSwarmConfiguration(config, numThreads), scheduling, chunkSize);
+	}
+
+	// Fastest iteration after the first, in nanoseconds, from the times the optimizer logged
+	private static double timeIteration(SwarmConfiguration calibration) {
+		Logging log = new Logging(calibration);
+		Random rand = new Random(CALIBRATION_SEED);
+		if (calibration instanceof ConcurrentSwarmConfiguration) {
+			new ParticleParallelOptimization((ConcurrentSwarmConfiguration) calibration, rand, log).optimize();
+		}
+		else {
+			new SequentialOptimization(calibration, rand, log).optimize();
+		}
+		long fastest = Long.MAX_VALUE;
+		for (int i = 1; i < calibration.getNumIterations(); i++) {
+			fastest = Math.min(fastest, log.getTime(i) - log.getTime(i - 1));
+		}
+		return fastest;
+	}
+
+	// Median nanoseconds per evaluation of points spread over the domain, and the interquartile range over the median,
+	// which unlike the standard deviation ignores the odd evaluation interrupted by a collection
+	private double[] timeEvaluations() {
+		int dimensions = config.getDimensions();
+		int samples = Math.max(1, Math.min(EVALUATION_SAMPLES, config.getNumParticles()));
+		double[] points = new double[samples * dimensions];
+		Random rand = new Random(CALIBRATION_SEED);
+		for (int s = 0; s < samples; s++) {
+			for (int d = 0; d < dimensions; d++) {
+				double low = config.getLowerBounds().get(d);
+				double high = config.getUpperBounds().get(d);
+				points[s * dimensions + d] = low + rand.nextDouble() * (high - low);
+			}
+		}
+
+		long[] nanos = new long[samples];
+		for (int pass = 0; pass < 2; pass++) { // Only the second pass counts, the first brings the points into cache
+			for (int s = 0; s < samples; s++) {
+				long start = System.nanoTime();
+				config.function(points, s * dimensions);
+				nanos[s] = System.nanoTime() - start;
+			}
+		}
+		Arrays.sort(nanos);
+		double median = nanos[samples / 2];
+		double spread = nanos[samples * 3 / 4] - nanos[samples / 4];
+		return new double[] { median, median == 0 ? 0 : spread / median };
+	}
+
+	// What the tuner measured and chose. The measurements are per calibration iteration
+	public static class Tuning {
+		private final SwarmConfiguration config;
+		private final ConcurrentSwarmConfiguration concurrentConfig; // The fastest parallel candidate, kept even when
+																		// the sequential optimizer was chosen
+		private final boolean sequential;
+		private final double evaluationNanos;
+		private final double evaluationVariation;
+		private final double updateNanos; // Per particle, excluding its evaluation
+		private final double sequentialNanos;
+		private final int[] threadCounts;
+		private final double[] parallelNanos; // For each of threadCounts
+
+		Tuning(SwarmConfiguration config, ConcurrentSwarmConfiguration concurrentConfig, boolean sequential,
+				double evaluationNanos, double evaluationVariation, double updateNanos, double sequentialNanos,
+				int[] threadCounts, double[] parallelNanos) {
+			this.config = config;
+			this.concurrentConfig = concurrentConfig;
+			this.sequential = sequential;
+			this.evaluationNanos = evaluationNanos;
+			this.evaluationVariation = evaluationVariation;
+			this.updateNanos = updateNanos;
+			this.sequentialNanos = sequentialNanos;
+			this.threadCounts = threadCounts;
+			this.parallelNanos = parallelNanos;
+		}
+
+		public boolean isSequential() {
+			return sequential;
+		}
+
+		public ConcurrentSwarmConfiguration getConcurrentConfiguration() {
+			return concurrentConfig;
+		}
+
+		public double getEvaluationNanos() {
+			return evaluationNanos;
+		}
+
+		public double getUpdateNanos() {
+			return updateNanos;
+		}
+
+		// The chosen optimizer, with the decision recorded in log so it is written out with the results
+		public SwarmOptimization createOptimization(Random rand, Logging log) {
+			log.setTuning(toString());
+			if (sequential) {
+				return new SequentialOptimization(config, rand, log);
+			}
+			return new ParticleParallelOptimization(concurrentConfig, rand, log);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("evaluation %.0f ns (variation %.2f), update %.0f ns per particle%n",
+					evaluationNanos, evaluationVariation, updateNanos));
+			sb.append(String.format("sequential %.1f us per iteration%n", sequentialNanos / 1e3));
+			for (int c = 0; c < threadCounts.length; c++) {
+				sb.append(String.format("%d threads %.1f us per iteration%n", threadCounts[c], parallelNanos[c] / 1e3));
+			}
+			if (sequential) {
+				sb.append("chose sequential");
+			}
+			else {
+				sb.append(String.format("chose %d threads, %s scheduling, chunks of at least %d particles",
+						concurrentConfig.getNumThreads(), concurrentConfig.getScheduling(), concurrentConfig.getMinChunkSize()));
+			}
+			return sb.toString();
+		}
+	}
+}
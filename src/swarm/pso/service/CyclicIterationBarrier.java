@@ -0,0 +1,55 @@
+package swarm.pso.service;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// IterationBarrier on a CyclicBarrier, which parks every waiting thread on a lock.
+// The right choice when iterations are long enough that the wake-up cost does not matter.
+public class CyclicIterationBarrier extends IterationBarrier {
+	private final CyclicBarrier barrier;
+	private volatile boolean broken = false; // Set by breakBarrier, so its own arrival can never release the others
+
+	public CyclicIterationBarrier(int parties, final Runnable action) {
+		barrier = new CyclicBarrier(parties, new Runnable() {
+			@Override
+			public void run() {
+				if (broken) {
+					throw new BrokenByParty(); // A throwing action breaks a CyclicBarrier
+				}
+				if (action != null) {
+					action.run();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void await(int party) throws InterruptedException, BrokenBarrierException {
+		barrier.await();
+	}
+
+	// reset() would break the phase and then start a new one for the next arrivals to wait in. Arriving with no time
+	// to wait breaks it for good instead: either the wait times out, or every other party is already waiting and
+	// the action throws
+	@Override
+	public void breakBarrier() {
+		broken = true;
+		try {
+			barrier.await(0, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// Broken
+		} catch (BrokenBarrierException e) {
+			// Already broken
+		} catch (BrokenByParty e) {
+			// Broken
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // Broken as well
+		}
+	}
+
+	private static class BrokenByParty extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+}
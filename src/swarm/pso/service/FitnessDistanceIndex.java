@@ -0,0 +1,84 @@
+package swarm.pso.service;
+
+import java.util.Arrays;
+
+import swarm.pso.structures.SwarmState;
+
+// An index of a swarm's personal bests for NeighbourhoodFitnessDistanceSearch: the particles sorted by their best
+// position in each dimension, and the particles with the lowest best values. It is a snapshot, rebuild() it once
+// per iteration. Searches only use it to pick candidates and read current values for the ratios themselves,
+// so a stale index costs accuracy, never correctness.
+// Building it sorts every dimension, O(dimensions * n log n), and can be read by any number of threads afterwards.
+public class FitnessDistanceIndex {
+	private final SwarmState swarm;
+	private final int numFittest;
+
+	// Entries pack a sortable form of a double into the high bits and the particle into the low bits, so that
+	// primitive long arrays can be sorted without allocating. The key loses the low bits, which only blurs the
+	// order of nearly identical positions.
+	private final long particleMask;
+	private final long[] positionKeys; // Sorted entries for dimension d at d * n through d * n + n - 1
+	private final long[] fitnessKeys; // Entries for best values
+	private final int[] fittest; // The numFittest particles with the lowest best values, best first
+
+	public FitnessDistanceIndex(SwarmState swarm, int numFittest) {
+		this.swarm = swarm;
+		this.numFittest = Math.min(numFittest, swarm.getNumParticles());
+		particleMask = (Long.highestOneBit(Math.max(1, swarm.getNumParticles() - 1)) << 1) - 1;
+		positionKeys = new long[swarm.getNumParticles() * swarm.getDimensions()];
+		fitnessKeys = new long[swarm.getNumParticles()];
+		fittest = new int[this.numFittest];
+	}
+
+	// Take a new snapshot of every particle's personal best
+	public void rebuild() {
+		int numParticles = swarm.getNumParticles();
+		double[] bestPositions = swarm.getBestPositionsByDimension();
+		for (int d = 0; d < swarm.getDimensions(); d++) {
+			int column = d * numParticles;
+			for (int q = 0; q < numParticles; q++) {
+				positionKeys[column + q] = key(bestPositions[column + q], q);
+			}
+			Arrays.sort(positionKeys, column, column + numParticles);
+		}
+
+		for (int q = 0; q < numParticles; q++) {
+			fitnessKeys[q] = key(swarm.getBestValue(q), q);
+		}
+		Arrays.sort(fitnessKeys);
+		for (int i = 0; i < numFittest; i++) {
+			fittest[i] = particle(fitnessKeys[i]);
+		}
+	}
+
+	// The rank at which position would be inserted into the sorted bests of dimension
+	public int insertionPoint(int dimension, double position) {
+		int column = dimension * swarm.getNumParticles();
+		int rank = Arrays.binarySearch(positionKeys, column, column + swarm.getNumParticles(), key(position, 0));
+		return (rank >= 0 ? rank : -rank - 1) - column;
+	}
+
+	// The particle whose best has the given rank in dimension
+	public int particleAt(int dimension, int rank) {
+		return particle(positionKeys[dimension * swarm.getNumParticles() + rank]);
+	}
+
+	public int getNumFittest() {
+		return numFittest;
+	}
+
+	// The particle with the i-th lowest best value
+	public int getFittest(int i) {
+		return fittest[i];
+	}
+
+	private long key(double value, int particle) {
+		long bits = Double.doubleToLongBits(value);
+		bits ^= (bits >> 63) & Long.MAX_VALUE; // Negative doubles sort in reverse as longs, flip them
+		return (bits & ~particleMask) | particle;
+	}
+
+	private int particle(long key) {
+		return (int) (key & particleMask);
+	}
+}
@@ -0,0 +1,103 @@
+package swarm.pso.service;
+
+import swarm.pso.structures.SwarmState;
+
+// Exact search for the personal best with the highest fitness-distance ratio (FDR), in every dimension at once.
+// The fitness term of a pair of particles is the same in every dimension, so it is computed once per pair,
+// and foreign particles are walked in blocks over SwarmState's dimension-major copy of the personal bests.
+// Selections, including ties, are identical to scanning particle+1 .. n-1, 0 .. particle-1 one dimension at a time.
+// An instance holds scratch space and must only be used by one thread, use one instance per thread to search in parallel.
+// Subclasses trade exactness for speed by only comparing against a bounded set of candidates.
+public class FitnessDistanceSearch {
+	public static final int DEFAULT_BLOCK_SIZE = 256;
+
+	private final SwarmState swarm;
+	private final int blockSize; // Number of foreign particles whose fitness is computed before walking the dimensions
+
+	private final double[] fitness; // How far each particle of the current block surpasses the searching particle
+	private final double[] bestFDR; // Best ratio found so far in each dimension
+
+	public FitnessDistanceSearch(SwarmState swarm) {
+		this(swarm, DEFAULT_BLOCK_SIZE);
+	}
+
+	public FitnessDistanceSearch(SwarmState swarm, int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be > 0");
+		}
+		this.swarm = swarm;
+		this.blockSize = blockSize;
+		fitness = new double[blockSize];
+		bestFDR = new double[swarm.getDimensions()];
+	}
+
+	// For every dimension d, stores in selections[d] the particle whose personal best has the best FDR for particle
+	public void search(int particle, int[] selections) {
+		int numParticles = swarm.getNumParticles();
+		int dimensions = swarm.getDimensions();
+		double[] positions = swarm.getPositions();
+		double[] bestPositions = swarm.getBestPositionsByDimension();
+		double value = swarm.getValue(particle);
+		int offset = swarm.offset(particle);
+
+		// The first candidate is taken unconditionally, just like the per-dimension scan
+		int first = (particle+1)%numParticles;
+		double fitness = -(swarm.getBestValue(first) - value);
+		for (int d = 0; d < dimensions; d++) {
+			bestFDR[d] = fdr(fitness, Math.abs(bestPositions[d * numParticles + first] - positions[offset + d]));
+			selections[d] = first;
+		}
+
+		// Remaining candidates in the same order as the scan, with strict comparisons so the earliest tie wins
+		if (first != 0) {
+			searchRange(particle, first + 1, numParticles, selections);
+			searchRange(particle, 0, particle, selections);
+		}
+		else {
+			searchRange(particle, 1, particle, selections);
+		}
+	}
+
+	// Compares particles from to to - 1 against the best selections so far
+	private void searchRange(int particle, int from, int to, int[] selections) {
+		int numParticles = swarm.getNumParticles();
+		int dimensions = swarm.getDimensions();
+		double[] positions = swarm.getPositions();
+		double[] bestPositions = swarm.getBestPositionsByDimension();
+		double[] bestValues = swarm.getBestValues();
+		double value = swarm.getValue(particle);
+		int offset = swarm.offset(particle);
+
+		for (int blockStart = from; blockStart < to; blockStart += blockSize) {
+			int blockEnd = Math.min(to, blockStart + blockSize);
+			for (int q = blockStart; q < blockEnd; q++) {
+				fitness[q - blockStart] = -(bestValues[q] - value); //Fitness is how far a particle surpasses this particle
+			}
+			for (int d = 0; d < dimensions; d++) {
+				double position = positions[offset + d];
+				int column = d * numParticles;
+				double best = bestFDR[d];
+				int selection = selections[d];
+				for (int q = blockStart; q < blockEnd; q++) {
+					double fdr = fdr(fitness[q - blockStart], Math.abs(bestPositions[column + q] - position));
+					if (fdr > best) {
+						best = fdr;
+						selection = q;
+					}
+				}
+				bestFDR[d] = best;
+				selections[d] = selection;
+			}
+		}
+	}
+
+	//Determine a single FDR
+	protected static double fdr(double fitness, double distance) {
+		if (distance != 0) {
+			return fitness/distance; //Perform the ratio
+		}
+		else {
+			return Double.MAX_VALUE; //Handle divides by zero
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package swarm.pso.service;
+
+import java.util.concurrent.BrokenBarrierException;
+
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.BarrierType;
+
+// A reusable barrier for a fixed set of threads, each identified by a party number from 0 to parties - 1.
+// The last thread to arrive runs the barrier action, if there is one, before any thread is released.
+// If a waiting thread is interrupted or the action throws, the barrier is broken and every other waiting thread
+// gets a BrokenBarrierException, as with CyclicBarrier.
+public abstract class IterationBarrier {
+	public abstract void await(int party) throws InterruptedException, BrokenBarrierException;
+	
+	// Breaks the barrier for good, for a party that failed and will never arrive again. Threads waiting now and
+	// threads arriving later get a BrokenBarrierException
+	public abstract void breakBarrier();
+
+	public static IterationBarrier create(BarrierType type, int parties, Runnable action) {
+		switch (type) {
+		case SPIN_THEN_PARK:
+			return new SpinningIterationBarrier(parties, action);
+		case TIERED_PHASER:
+			return new PhaserIterationBarrier(parties, action);
+		default:
+			return new CyclicIterationBarrier(parties, action);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package swarm.pso.service;
+
+// Told about every iteration an optimizer completes, in order, on the optimizer's bookkeeping thread while the
+// next iteration is already running. bestPosition is a copy the listener may keep but must not modify.
+public interface IterationListener {
+	public void iterationCompleted(int iteration, double[] bestPosition, double bestValue, long evaluations);
+	
+	// Once after the last iteration, when the run has ended normally or was stopped, and its log is complete
+	public void runCompleted();
+	
+	// Once instead of runCompleted, when the run ended because the optimization or its bookkeeping threw failure.
+	// The log stops at whatever was logged before then
+	public void runFailed(Throwable failure);
+}
@@ -0,0 +1,134 @@
+package swarm.pso.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import swarm.pso.logging.FlightEvents;
+
+// Runs an optimizer's per-iteration bookkeeping (logging, listeners) on another thread, so iteration k's
+// bookkeeping overlaps the particle updates of iteration k + 1.
+// Tasks run one at a time in the order they are submitted, and at most one is outstanding: submit waits for the
+// previous task first. A task can therefore read swarm state that is not written again until the iteration after next.
+// All pipelines share one pool of threads, so many optimizations running at once only need as many bookkeeping
+// threads as they have tasks outstanding, and threads are reused from run to run.
+public class IterationPipeline {
+	private static final ExecutorService BOOKKEEPING = Executors.newCachedThreadPool(new ThreadFactory() {
+		// Daemons, so bookkeeping never keeps the JVM alive. Idle threads end after a minute
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "pso-bookkeeping");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private final List<IterationListener> listeners = new CopyOnWriteArrayList<IterationListener>();
+	
+	private Future<?> pending; // The last task submitted, null once it is known to have finished
+	private boolean ended = false; // Whether the listeners have been told the run ended, guarded by this
+	
+	public void addListener(IterationListener listener) {
+		listeners.add(listener);
+	}
+	
+	public synchronized void submit(Runnable task) {
+		await();
+		pending = BOOKKEEPING.submit(FlightEvents.LOG_FLUSH.isEnabled() ? recorded(task) : task);
+	}
+	
+	// Records the task as a LogFlush event, for a flight recording that wants them
+	private static Runnable recorded(final Runnable task) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				FlightEvents.Event event = FlightEvents.LOG_FLUSH.begin();
+				task.run();
+				if (event != null) {
+					event.commit("pipeline");
+				}
+			}
+		};
+	}
+	
+	// Waits for every submitted task, the optimizer's log is complete once this returns. Then tells the listeners the
+	// run completed, or that it failed if the last task threw
+	public synchronized void finish() {
+		try {
+			await();
+		} catch (RuntimeException e) {
+			fail(e);
+			throw e;
+		} catch (Error e) {
+			fail(e);
+			throw e;
+		}
+		if (!ended) {
+			ended = true;
+			for (IterationListener listener : listeners) {
+				listener.runCompleted();
+			}
+		}
+	}
+	
+	// In place of finish, for a run that ended by throwing failure. Waits for the task still running, so listeners
+	// are never called at once, then tells them. The task's own exception is dropped, failure is the one reported
+	public synchronized void fail(Throwable failure) {
+		try {
+			await();
+		} catch (RuntimeException e) {
+			// Reported by failure
+		} catch (Error e) {
+			// Reported by failure
+		}
+		if (!ended) {
+			ended = true;
+			for (IterationListener listener : listeners) {
+				listener.runFailed(failure);
+			}
+		}
+	}
+	
+	// For tasks to call once the iteration is logged
+	public void iterationCompleted(int iteration, double[] bestPosition, double bestValue, long evaluations) {
+		for (IterationListener listener : listeners) {
+			listener.iterationCompleted(iteration, bestPosition, bestValue, evaluations);
+		}
+	}
+	
+	// A task that threw has its exception rethrown here, on the optimizer's side
+	private void await() {
+		if (pending == null) {
+			return;
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					pending.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true; // Bookkeeping is short, finish waiting and keep the interrupt for the caller
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			else if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			pending = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
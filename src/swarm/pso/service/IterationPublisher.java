@@ -0,0 +1,265 @@
+package swarm.pso.service;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import swarm.pso.logging.Logging;
+
+//Publishes a run's iterations as IterationSnapshots. Register it with the optimization's addIterationListener, along
+//with the Logging the optimization writes to, then subscribe to it.
+//Only every interval-th iteration is published, and none sooner than minInterval nanoseconds of run time after the
+//last one. Nothing is copied while nobody is subscribed, and particle positions only if asked for: of every particle,
+//or of evenly spaced particles up to maxParticles of them.
+//Subscribers are called on threads of their own, never the optimizer's. Each has a buffer of up to bufferSize
+//snapshots it has not been sent yet, because it has not requested more or is still busy with the last one. Once that
+//is full the oldest snapshot is dropped, so a slow subscriber misses iterations rather than holding up the run.
+//A buffer of one always holds the latest iteration.
+//Positions come from the log once the iteration is logged, which AsynchronousOptimization only does as its particles
+//reach each generation, so they are incomplete for it. The log is let go of once the run completes, so a publisher
+//kept around afterwards, for late subscribers, does not keep the run's whole log in memory.
+//Subscribers are completed when the run completes, and sent onError with the run's exception if it fails.
+public class IterationPublisher implements IterationListener, ReactiveStreams.Publisher<IterationSnapshot> {
+	public static final int DEFAULT_BUFFER_SIZE = 1;
+
+	private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(new ThreadFactory() {
+		// Daemons, like the bookkeeping threads. A subscriber only holds one while it has snapshots to take
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "pso-delivery");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Logging log; // Null once the run completes. Only used by the pipeline, which calls listeners one at a time
+	private final int interval;
+	private final long minInterval;
+	private final int particleStride; // Copy every particleStride-th particle's position, none if 0
+	private final int bufferSize;
+
+	private final List<SnapshotSubscription> subscriptions = new CopyOnWriteArrayList<SnapshotSubscription>();
+	private long lastPublished = Long.MIN_VALUE; // Run time of the last snapshot, only used on the bookkeeping thread
+	private volatile boolean completed = false;
+	private volatile Throwable runFailure; // Why the run failed, set before completed
+
+	// Every iteration, without particle positions
+	public IterationPublisher(Logging log) {
+		this(log, 1, 0, false, DEFAULT_BUFFER_SIZE);
+	}
+
+	public IterationPublisher(Logging log, int interval, long minInterval, boolean positions, int bufferSize) {
+		this(log, interval, minInterval, positions ? Integer.MAX_VALUE : 0, bufferSize);
+	}
+
+	public IterationPublisher(Logging log, int interval, long minInterval, int maxParticles, int bufferSize) {
+		if (interval <= 0 || minInterval < 0 || maxParticles < 0 || bufferSize <= 0) {
+			throw new IllegalArgumentException("Need a positive interval and buffer size");
+		}
+		this.log = log;
+		this.interval = interval;
+		this.minInterval = minInterval;
+		int particles = log.getParticleCount();
+		particleStride = maxParticles == 0 ? 0 : Math.max(1, (particles + maxParticles - 1) / maxParticles);
+		this.bufferSize = bufferSize;
+	}
+
+	// A subscriber that arrives after the run has ended is completed, or sent its failure, straight away
+	@Override
+	public void subscribe(ReactiveStreams.Subscriber<? super IterationSnapshot> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		SnapshotSubscription subscription = new SnapshotSubscription(subscriber);
+		subscriptions.add(subscription);
+		if (completed) {
+			Throwable failure = runFailure;
+			if (failure != null) {
+				subscription.fail(failure);
+			}
+			else {
+				subscription.complete();
+			}
+		}
+		subscription.schedule();
+	}
+
+	@Override
+	public void iterationCompleted(int iteration, double[] bestPosition, double bestValue, long evaluations) {
+		if (log == null || subscriptions.isEmpty() || (iteration + 1) % interval != 0) {
+			return;
+		}
+		long time = log.getTime(iteration);
+		if (lastPublished != Long.MIN_VALUE && time - lastPublished < minInterval) {
+			return;
+		}
+		lastPublished = time;
+		IterationSnapshot snapshot = new IterationSnapshot(iteration, time, bestValue, bestPosition, evaluations,
+				particleStride > 0 ? log.copyParticlePositions(iteration, particleStride) : null, Math.max(1, particleStride));
+		for (SnapshotSubscription subscription : subscriptions) {
+			subscription.offer(snapshot);
+		}
+	}
+
+	@Override
+	public void runCompleted() {
+		log = null;
+		completed = true;
+		for (SnapshotSubscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	// Snapshots not yet sent are dropped, the subscribers only hear of the failure
+	@Override
+	public void runFailed(Throwable failure) {
+		log = null;
+		runFailure = failure;
+		completed = true;
+		for (SnapshotSubscription subscription : subscriptions) {
+			subscription.fail(failure);
+		}
+	}
+
+	// Delivers to one subscriber, on at most one delivery thread at a time
+	private class SnapshotSubscription implements ReactiveStreams.Subscription, Runnable {
+		private final ReactiveStreams.Subscriber<? super IterationSnapshot> subscriber;
+
+		// Guarded by this
+		private final ArrayDeque<IterationSnapshot> buffer = new ArrayDeque<IterationSnapshot>();
+		private long demand = 0;
+		private boolean subscribed = false; // Whether onSubscribe has been called
+		private boolean completing = false; // The run ended, complete once the buffer is empty
+		private boolean cancelled = false; // Also set once the subscriber has been completed or failed
+		private Throwable failure; // Sent instead of any further snapshots
+		private boolean scheduled = false; // Whether a delivery thread is running, or about to run, this
+
+		SnapshotSubscription(ReactiveStreams.Subscriber<? super IterationSnapshot> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				if (n <= 0) {
+					failure = new IllegalArgumentException("Requested " + n + " snapshots");
+					buffer.clear();
+				}
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // Saturates, so Long.MAX_VALUE means unbounded
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				buffer.clear();
+			}
+			subscriptions.remove(this);
+		}
+
+		void offer(IterationSnapshot snapshot) {
+			synchronized (this) {
+				if (cancelled || completing) {
+					return;
+				}
+				if (buffer.size() == bufferSize) {
+					buffer.poll();
+				}
+				buffer.add(snapshot);
+			}
+			schedule();
+		}
+
+		void complete() {
+			synchronized (this) {
+				completing = true;
+			}
+			schedule();
+		}
+
+		void fail(Throwable runFailure) {
+			synchronized (this) {
+				if (failure == null) {
+					failure = runFailure;
+				}
+				buffer.clear();
+			}
+			schedule();
+		}
+
+		// Starts delivering if there is anything this subscriber can be sent now
+		void schedule() {
+			synchronized (this) {
+				boolean deliverable = !buffer.isEmpty() && demand > 0;
+				if (scheduled || cancelled ||
+						(subscribed && failure == null && !deliverable && !(completing && buffer.isEmpty()))) {
+					return;
+				}
+				scheduled = true;
+			}
+			DELIVERY.execute(this);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				IterationSnapshot next = null;
+				boolean subscribe = false;
+				Throwable error = null;
+				boolean done = false;
+				synchronized (this) {
+					if (cancelled) {
+						scheduled = false;
+						return;
+					}
+					if (!subscribed) {
+						subscribed = subscribe = true;
+					}
+					else if (failure != null) {
+						error = failure;
+						cancelled = true;
+					}
+					else if (!buffer.isEmpty() && demand > 0) {
+						next = buffer.poll();
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					}
+					else if (completing && buffer.isEmpty()) {
+						done = cancelled = true;
+					}
+					else {
+						scheduled = false;
+						return;
+					}
+				}
+				try {
+					if (subscribe) {
+						subscriber.onSubscribe(this);
+					}
+					else if (error != null) {
+						subscriptions.remove(this);
+						subscriber.onError(error);
+					}
+					else if (done) {
+						subscriptions.remove(this);
+						subscriber.onComplete();
+					}
+					else {
+						subscriber.onNext(next);
+					}
+				} catch (RuntimeException e) {
+					cancel(); // A subscriber that throws is cancelled, as the rules say
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package swarm.pso.service;
+
+//The state of a run at the end of one iteration, as published by an IterationPublisher.
+//The arrays are shared by every subscriber of the publisher, so they must not be modified.
+public class IterationSnapshot {
+	private final int iteration;
+	private final long elapsedTime; // Nanoseconds from the start of the run to the end of the iteration
+	private final double bestValue;
+	private final double[] bestPosition;
+	private final long evaluations;
+	private final double[] particlePositions; // Laid out particle by particle as in Logging, or null if not asked for
+	private final int particleStride; // particlePositions holds particles 0, particleStride, 2 * particleStride ...
+
+	public IterationSnapshot(int iteration, long elapsedTime, double bestValue, double[] bestPosition, long evaluations,
+			double[] particlePositions, int particleStride) {
+		this.iteration = iteration;
+		this.elapsedTime = elapsedTime;
+		this.bestValue = bestValue;
+		this.bestPosition = bestPosition;
+		this.evaluations = evaluations;
+		this.particlePositions = particlePositions;
+		this.particleStride = particleStride;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	public double getBestValue() {
+		return bestValue;
+	}
+
+	public double[] getBestPosition() {
+		return bestPosition;
+	}
+
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	public boolean hasParticlePositions() {
+		return particlePositions != null;
+	}
+
+	// Dimension d of the i-th particle held, particle i * getParticleStride(), is at i * dimensions + d
+	public double[] getParticlePositions() {
+		return particlePositions;
+	}
+
+	// 1 unless the publisher was asked for fewer particles than the swarm has
+	public int getParticleStride() {
+		return particleStride;
+	}
+}
@@ -0,0 +1,79 @@
+package swarm.pso.service;
+
+import swarm.pso.structures.SwarmState;
+
+// Approximate FDR search that, in each dimension, compares against the numCandidates personal bests nearest to the
+// particle's position and the numCandidates fittest particles. Those are the particles that can have a large
+// ratio: a small distance or a large fitness difference. Candidates come from a shared FitnessDistanceIndex,
+// which the optimizer rebuilds every iteration. Falls back to the exact search for small swarms.
+public class NeighbourhoodFitnessDistanceSearch extends FitnessDistanceSearch {
+	private final SwarmState swarm;
+	private final FitnessDistanceIndex index;
+	private final int numCandidates;
+
+	public NeighbourhoodFitnessDistanceSearch(SwarmState swarm, FitnessDistanceIndex index, int numCandidates) {
+		super(swarm);
+		this.swarm = swarm;
+		this.index = index;
+		this.numCandidates = numCandidates;
+	}
+
+	@Override
+	public void search(int particle, int[] selections) {
+		int numParticles = swarm.getNumParticles();
+		if (numCandidates + index.getNumFittest() >= numParticles - 1) {
+			super.search(particle, selections);
+			return;
+		}
+
+		double[] bestPositions = swarm.getBestPositionsByDimension();
+		double[] bestValues = swarm.getBestValues();
+		double value = swarm.getValue(particle);
+
+		for (int d = 0; d < swarm.getDimensions(); d++) {
+			double position = swarm.getPosition(particle, d);
+			int column = d * numParticles;
+
+			// Start from the next particle, like the exact search
+			int selection = (particle+1)%numParticles;
+			double best = fdr(-(bestValues[selection] - value), Math.abs(bestPositions[column + selection] - position));
+
+			// Walk outwards from the particle's position, always taking the closer of the two sides
+			int below = index.insertionPoint(d, position) - 1;
+			int above = below + 1;
+			for (int found = 0; found < numCandidates && (below >= 0 || above < numParticles); ) {
+				int q;
+				if (above >= numParticles || (below >= 0 && 
+						position - bestPositions[column + index.particleAt(d, below)] <= 
+						bestPositions[column + index.particleAt(d, above)] - position)) {
+					q = index.particleAt(d, below--);
+				}
+				else {
+					q = index.particleAt(d, above++);
+				}
+				if (q == particle) {
+					continue;
+				}
+				found++;
+				double fdr = fdr(-(bestValues[q] - value), Math.abs(bestPositions[column + q] - position));
+				if (fdr > best) {
+					best = fdr;
+					selection = q;
+				}
+			}
+
+			for (int i = 0; i < index.getNumFittest(); i++) {
+				int q = index.getFittest(i);
+				if (q == particle) {
+					continue;
+				}
+				double fdr = fdr(-(bestValues[q] - value), Math.abs(bestPositions[column + q] - position));
+				if (fdr > best) {
+					best = fdr;
+					selection = q;
+				}
+			}
+			selections[d] = selection;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package swarm.pso.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A long-lived, fixed set of threads shared by any number of optimizations, so running hundreds of them at once
+// does not start hundreds of thread pools. Runs are split into pieces (see PiecewiseOptimization), and each time a
+// thread is free it takes a piece from the highest priority run that has one ready, taking turns between runs of
+// equal priority. A run never has more pieces running at once than its thread cap.
+// Optimizations that cannot be split run whole on one engine thread, with whatever threads they start themselves.
+// submit returns at once, and the Run it returns is a Future of the best position. Stopping or cancelling a run,
+// or setting a deadline on its optimization, ends it cooperatively after the iteration in progress.
+public class OptimizationEngine implements AutoCloseable {
+	public static final int DEFAULT_PRIORITY = 0;
+	
+	private final Thread[] threads;
+	
+	private final ReentrantLock lock = new ReentrantLock(); // Guards everything below
+	private final Condition changed = lock.newCondition(); // Signalled when a piece may have become ready, or a run ended
+	private final List<Run> runs = new ArrayList<Run>(); // Unfinished runs, the least recently served first
+	private boolean closed = false;
+	
+	public OptimizationEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public OptimizationEngine(int numThreads) {
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "pso-engine-" + t);
+			threads[t].setDaemon(true); // An engine that is never closed does not keep the JVM alive
+			threads[t].start();
+		}
+	}
+	
+	public int getNumThreads() {
+		return threads.length;
+	}
+	
+	public Run submit(SwarmOptimization optimization) {
+		return submit(optimization, DEFAULT_PRIORITY, threads.length);
+	}
+	
+	// Higher priorities are served first. maxThreads caps how many engine threads work on the run at once
+	public Run submit(SwarmOptimization optimization, int priority, int maxThreads) {
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("A run needs at least one thread");
+		}
+		Run run = new Run(optimization, priority, maxThreads);
+		lock.lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("The engine is closed");
+			}
+			runs.add(run);
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		return run;
+	}
+	
+	// Accepts no more runs, lets the submitted ones finish, then stops the threads. Waits for them unless interrupted,
+	// in which case it returns with the interrupt flag set and the threads stop on their own once the runs are done
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void work() {
+		while (true) {
+			Run run = null;
+			Runnable piece = null;
+			lock.lock();
+			try {
+				while (run == null) {
+					for (Run candidate : byPriority()) {
+						if (candidate.running == 0 && !candidate.finishing && candidate.isFinished()) {
+							candidate.finishing = true; // Nothing left to run, which happens if it had no iterations
+							run = candidate;
+							break;
+						}
+						piece = candidate.nextPiece();
+						if (piece != null) {
+							run = candidate;
+							run.running++;
+							runs.remove(run); // To the back of the queue, behind the runs of equal priority it went ahead of
+							runs.add(run);
+							break;
+						}
+					}
+					if (run == null) {
+						if (closed && runs.isEmpty()) {
+							return;
+						}
+						changed.awaitUninterruptibly();
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (piece == null) {
+				run.complete();
+				continue;
+			}
+			
+			Throwable failure = null;
+			try {
+				piece.run();
+			} catch (Throwable t) {
+				failure = t;
+			}
+			
+			boolean finishing = false;
+			lock.lock();
+			try {
+				run.running--;
+				if (failure != null && run.failure == null) {
+					run.failure = failure;
+				}
+				if (run.running == 0 && !run.finishing && (run.failure != null || run.isFinished())) {
+					run.finishing = true; // Only the last thread out of a finished run completes it
+					finishing = true;
+				}
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if (finishing) {
+				run.complete();
+			}
+		}
+	}
+	
+	// Stable, so runs of equal priority stay in the order they were last served
+	private List<Run> byPriority() {
+		List<Run> sorted = new ArrayList<Run>(runs);
+		Collections.sort(sorted, new Comparator<Run>() {
+			@Override
+			public int compare(Run a, Run b) {
+				return a.priority == b.priority ? 0 : (a.priority > b.priority ? -1 : 1);
+			}
+		});
+		return sorted;
+	}
+	
+	// A submitted optimization. Wait on it for the result, and query the optimization for the best so far while it runs
+	public class Run implements Future<List<Double>> {
+		private final SwarmOptimization optimization;
+		private final PiecewiseOptimization pieces; // optimization, or null if it has to run whole
+		private final int priority;
+		private final int maxThreads;
+		
+		private int running = 0; // Pieces being run, guarded by the engine's lock like the fields below
+		private boolean started = false; // Whether an optimization that runs whole has been handed out
+		private boolean finishing = false;
+		private Throwable failure; // The first exception a piece threw
+		private boolean done = false;
+		private boolean cancelled = false;
+		private List<Double> result;
+		
+		Run(SwarmOptimization optimization, int priority, int maxThreads) {
+			this.optimization = optimization;
+			this.pieces = optimization instanceof PiecewiseOptimization ? (PiecewiseOptimization) optimization : null;
+			this.priority = priority;
+			this.maxThreads = maxThreads;
+		}
+		
+		public SwarmOptimization getOptimization() {
+			return optimization;
+		}
+		
+		// Ends the run after the iteration in progress, and it completes as usual with the best position found so far
+		public void stop() {
+			optimization.stop();
+		}
+		
+		// Stops the run as stop() does. Like any Future, it is then done and get() throws CancellationException, but
+		// await() still waits for the run to wind down and returns its best position
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			lock.lock();
+			try {
+				if (done || cancelled) {
+					return false;
+				}
+				cancelled = true;
+				changed.signalAll(); // Wakes threads waiting in get()
+			} finally {
+				lock.unlock();
+			}
+			optimization.stop(); // Pieces are never interrupted, the run always stops between iterations
+			return true;
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			lock.lock();
+			try {
+				return cancelled;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public boolean isDone() {
+			lock.lock();
+			try {
+				return done || cancelled;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		// The best position found, once the run is over. Rethrows anything the optimization threw
+		public List<Double> await() throws InterruptedException {
+			lock.lock();
+			try {
+				while (!done) {
+					changed.await();
+				}
+				if (failure instanceof RuntimeException) {
+					throw (RuntimeException) failure;
+				}
+				else if (failure instanceof Error) {
+					throw (Error) failure;
+				}
+				else if (failure != null) {
+					throw new IllegalStateException(failure);
+				}
+				return result;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public List<Double> get() throws InterruptedException, ExecutionException {
+			lock.lock();
+			try {
+				while (!done && !cancelled) {
+					changed.await();
+				}
+				return getResult();
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public List<Double> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			long remaining = unit.toNanos(timeout);
+			lock.lock();
+			try {
+				while (!done && !cancelled) {
+					if (remaining <= 0) {
+						throw new TimeoutException();
+					}
+					remaining = changed.awaitNanos(remaining);
+				}
+				return getResult();
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		// With the engine's lock held, once done or cancelled
+		private List<Double> getResult() throws ExecutionException {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return result;
+		}
+		
+		// With the engine's lock held
+		private Runnable nextPiece() {
+			if (running >= maxThreads || finishing || failure != null) {
+				return null;
+			}
+			if (pieces != null) {
+				return pieces.nextPiece();
+			}
+			if (started) {
+				return null;
+			}
+			started = true;
+			return new Runnable() {
+				@Override
+				public void run() {
+					result = optimization.optimize();
+				}
+			};
+		}
+		
+		// With the engine's lock held
+		private boolean isFinished() {
+			return pieces != null ? pieces.isFinished() : started;
+		}
+		
+		// Without the engine's lock, since finishing waits for the run's logging. A failed run's listeners are told it
+		// failed, whole runs tell their own
+		private void complete() {
+			List<Double> finished = result;
+			Throwable thrown = null;
+			if (pieces != null) {
+				try {
+					if (failure == null) {
+						finished = pieces.finish();
+					}
+					else {
+						pieces.fail(failure);
+					}
+				} catch (Throwable t) {
+					thrown = failure == null ? t : null; // The first failure is the one the run reports
+				}
+			}
+			lock.lock();
+			try {
+				if (thrown != null) {
+					failure = thrown;
+				}
+				result = finished;
+				done = true;
+				runs.remove(this);
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
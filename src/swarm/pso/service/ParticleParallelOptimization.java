@@ -1,33 +1,100 @@
 package swarm.pso.service;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import swarm.pso.logging.FlightEvents;
 import swarm.pso.logging.Logging;
-import swarm.pso.structures.Particle;
-import swarm.pso.structures.ParticleWrapper;
+import swarm.pso.logging.RunMetrics;
+import swarm.pso.logging.RunMetrics.Phase;
+import swarm.pso.random.Randoms;
+import swarm.pso.random.SplitMixRandom;
+import swarm.pso.structures.SwarmState;
 import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.GlobalBestUpdate;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.Scheduling;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.StateUpdate;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
 
 //This class represents our latest and greatest implementation of concurrent FDR PSO
-public class ParticleParallelOptimization implements SwarmOptimization {
+public class ParticleParallelOptimization implements PiecewiseOptimization {
 	private final ConcurrentSwarmConfiguration config; // config has info about the function and particle behavior
 	
-	private final List<ParticleWrapper> particles; // The structures containing each particle's state information
+	private final SwarmState[] generations; // The primitive arrays containing each particle's state information.
+											// Each particle is only written by the thread that owns it.
+											// Updated in place there is a single generation, and other threads
+											// may observe a personal best while it is being rewritten.
+											// Double buffered, iteration k reads generation k % 2 and writes
+											// generation (k + 1) % 2, so nothing is read while it is written.
+	private int generation = 0; // Index of the generation being read, only changed by the barrier
 	
-	private List<Double> bestPosition = null; // the parameters that give the best known value
-	private double bestValue; // the best known value of the function
+	private final AtomicReference<BestSnapshot> best = new AtomicReference<BestSnapshot>(); // The global best, replaced
+																							// as a whole so it can be
+																							// read without locking
+	private BestSnapshot iterationBest; // The global best when the current iteration started, only changed by the barrier.
+										// Immediate mode can publish a new best before a slow thread has even started
 	
-	private final CyclicBarrier barrier; // Threads wait on barrier before continuing with next iteration.
+	private final double[] lowerBounds; // Unboxed copies of the configuration's bounds for the inner loops
+	private final double[] upperBounds;
+	private final double[] maximumVelocity;
+	
+	private final FitnessDistanceIndex[] neighbourhoodIndexes; // One per generation, shared by all threads for the
+																// neighbourhood FDR strategy and rebuilt at the barrier.
+																// Otherwise null
+	
+	private final IterationBarrier barrier; // Threads wait on barrier before continuing with next iteration.
 											// This prevents one thread from getting too far ahead
+	private final IterationBarrier evaluationBarrier; // In batch mode, threads wait here after moving and evaluating
+													// their particles, before any personal or global best changes
+	
+	private final AtomicLong evaluations = new AtomicLong(); // Number of times the function has been called by this run,
+																// threads add their own count once per iteration
+	
+	private final Random rand; // RNG used to initialize the swarm and seed particleRandoms
+	private final Random[] particleRandoms; // One generator per particle, derived from a single seed drawn from rand.
+											// A particle's numbers do not depend on which thread updates it, so with
+											// batch evaluation a seeded run gives the same result for any number of threads
+	
+	private final List<WorkerBuffers> workers = new CopyOnWriteArrayList<WorkerBuffers>(); // One per thread, the end
+																							// of an iteration merges
+																							// their local bests
+	private final ThreadLocal<WorkerBuffers> poolBuffers = new ThreadLocal<WorkerBuffers>() {
+		// Work stealing threads are created by the pool, so each gets its buffers on first use
+		@Override
+		protected WorkerBuffers initialValue() {
+			WorkerBuffers buffers = createWorker();
+			buffers.beginWork(); // Ended by the iteration thread once the pool is done, see stealParticleList
+			return buffers;
+		}
+	};
+	
+	private volatile boolean stopped = false; // Set by stop(), a passed deadline or an interrupt, and never cleared
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // The first exception a
+																						// thread of optimize() threw
+	private volatile Long deadline = null; // In System.nanoTime() terms, null for none
+	private boolean ending = false; // Set by the barrier once the run is stopped, so every thread leaves after the same iteration
 	
-	private final Random rand; // RNG
+	private int pieceIteration = 0; // Run by an OptimizationEngine, the iteration being run, the step it is in,
+	private Step pieceStep; // and how many of the step's pieces have been handed out and finished.
+	private double pieceInertia; // Each step has one piece per configured thread, guarded by this
+	private int piecesStarted = 0;
+	private int piecesFinished = 0;
 	
 	private final Logging log; // Stores some state information
+	private final RunMetrics metrics; // The log's metrics, null when they are off. Each worker has a recorder
+	private final RunMetrics.Recorder bookkeeping; // Times the pipeline's tasks, null when metrics are off
+	private final IterationPipeline pipeline = new IterationPipeline(); // Logs each iteration while the threads run the next
+	private FlightEvents.Event iterationEvent; // The Iteration event in progress, null unless recorded. Only touched
+												// before the threads start and by endIteration
 	
 	public ParticleParallelOptimization(ConcurrentSwarmConfiguration config, Logging log) {
 		this(config, new Random(), log);
@@ -38,147 +105,539 @@ public class ParticleParallelOptimization implements SwarmOptimization {
 		this.rand = rand;
 		this.log = log;
 		
-		barrier = new CyclicBarrier(ParticleParallelOptimization.this.config.getNumThreads(), new Runnable() {
+		lowerBounds = toArray(config.getLowerBounds());
+		upperBounds = toArray(config.getUpperBounds());
+		maximumVelocity = toArray(config.getMaximumVelocity());
+		
+		metrics = log.getMetrics();
+		bookkeeping = metrics == null ? null : metrics.newRecorder("bookkeeping");
+		
+		barrier = IterationBarrier.create(config.getBarrierType(), config.getNumThreads(), new Runnable() {
 			private int iteration = 0;
 			
 			// Last particle out will log state at time of completion
 			@Override
 			public void run() {
-	    		ParticleParallelOptimization.this.log.addBestPosition(iteration, bestPosition);
-	    		ParticleParallelOptimization.this.log.addTime(iteration++, System.nanoTime());
+				endIteration(iteration++, 0);
+				ending = shouldStop();
 			}
 			
 		});
 		
+		evaluationBarrier = IterationBarrier.create(config.getBarrierType(), config.getNumThreads(), null);
+		
 		log.setStartTime();
 		
-		particles = Arrays.asList(new ParticleWrapper[config.getNumParticles()]);
+		generations = new SwarmState[config.getStateUpdate() == StateUpdate.DOUBLE_BUFFERED ? 2 : 1];
+		for (int g = 0; g < generations.length; g++) {
+			generations[g] = new SwarmState(config.getNumParticles(), config.getDimensions());
+		}
+		SwarmState swarm = generations[0]; // The second generation is completely written by the first iteration
 
-		//Initialize particles
+		//Initialize particles, evaluating them in batches after every random draw so the draws stay in the same order
 		for (int p = 0; p < config.getNumParticles(); p++) {
-			List<Double> initialPosition = initialPosition();
-			
-			double initialValue = config.function(initialPosition);
-			
-			List<Double> initialVelocity = initialVelocity();
-			
-			Particle particle = new Particle(initialPosition, initialVelocity, initialPosition, initialValue, initialValue);
-						
-			setParticle(p, particle);
+			int offset = swarm.offset(p);
+			initialPosition(swarm.getPositions(), offset);
+			initialVelocity(swarm.getVelocities(), offset);
+		}
+		int batchSize = Math.max(1, config.getEvaluationBatchSize());
+		for (int first = 0; first < config.getNumParticles(); first += batchSize) {
+			int count = Math.min(batchSize, config.getNumParticles() - first);
+			config.function(swarm.getPositions(), swarm.offset(first), count, swarm.getValues(), first);
+			evaluations.addAndGet(count);
+		}
+		int initialBest = 0;
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			swarm.updateBest(p);
+		
+			if (swarm.getValue(p) < swarm.getValue(initialBest)) {
+				initialBest = p;
+			}
+		}
+		best.set(new BestSnapshot(swarm, initialBest, -1));
+		iterationBest = best.get();
+		
+		long rootSeed = rand.nextLong();
+		particleRandoms = new Random[config.getNumParticles()];
+		for (int p = 0; p < particleRandoms.length; p++) {
+			particleRandoms[p] = SplitMixRandom.stream(rootSeed, p);
+		}
+		
+		if (config.getFdrWeight() != 0.0 && config.getFdrStrategy() == FdrStrategy.NEIGHBOURHOOD) {
+			neighbourhoodIndexes = new FitnessDistanceIndex[generations.length];
+			for (int g = 0; g < generations.length; g++) {
+				neighbourhoodIndexes[g] = new FitnessDistanceIndex(generations[g], config.getFdrCandidates());
+			}
+			neighbourhoodIndexes[0].rebuild();
+		}
+		else {
+			neighbourhoodIndexes = null;
+		}
 		
-			updateGlobalBest(getParticle(p));
+		if (config.getScheduling() == Scheduling.STATIC) {
+			for (int t = 0; t < config.getNumThreads(); t++) {
+				createWorker();
+			}
+		}
+	}
+	
+	// Buffers are reused for every update a thread performs
+	private WorkerBuffers createWorker() {
+		FitnessDistanceSearch[] fdrSearches = new FitnessDistanceSearch[generations.length];
+		for (int g = 0; g < generations.length; g++) {
+			fdrSearches[g] = createFdrSearch(g);
+		}
+		RunMetrics.Recorder recorder = metrics == null ? null : metrics.newRecorder("worker-" + workers.size());
+		WorkerBuffers buffers = new WorkerBuffers(generations[0], fdrSearches,
+				config.getFdrWeight() != 0.0 ? config.getFdrStrategy() : null, recorder);
+		workers.add(buffers);
+		return buffers;
+	}
+	
+	// Each thread gets its own search of each generation, since searches hold scratch space
+	private FitnessDistanceSearch createFdrSearch(int generation) {
+		SwarmState swarm = generations[generation];
+		if (neighbourhoodIndexes != null) {
+			return new NeighbourhoodFitnessDistanceSearch(swarm, neighbourhoodIndexes[generation], config.getFdrCandidates());
+		}
+		else if (config.getFdrStrategy() == FdrStrategy.SAMPLED) {
+			return new SampledFitnessDistanceSearch(swarm, config.getFdrCandidates(), particleRandoms);
+		}
+		else {
+			return new FitnessDistanceSearch(swarm);
 		}
 	}
+	
+	// The generation written by the current iteration, the same as the one read when updating in place
+	private int nextGeneration() {
+		return (generation + 1) % generations.length;
+	}
+	
+	private static double[] toArray(List<Double> list) {
+		double[] array = new double[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
 
-	private List<Double> initialPosition() {
-		List<Double> position = Arrays.asList(new Double[config.getDimensions()]);
+	private void initialPosition(double[] position, int offset) {
 		for (int d = 0; d < config.getDimensions(); d++) {
-			Double lowPos = config.getLowerBounds().get(d);
-			Double highPos = config.getUpperBounds().get(d);
-			position.set(d, lowPos+rand.nextDouble()*(highPos-lowPos));
+			double lowPos = lowerBounds[d];
+			double highPos = upperBounds[d];
+			position[offset + d] = lowPos+rand.nextDouble()*(highPos-lowPos);
 		}
-		return position;
 	}
 	
-	private List<Double> initialVelocity() {
-		List<Double> velocity = Arrays.asList(new Double[config.getDimensions()]);
+	private void initialVelocity(double[] velocity, int offset) {
 		for (int d = 0; d < config.getDimensions(); d++) {
-			Double lowVel = -config.getMaximumVelocity().get(d);
-			Double highVel = config.getMaximumVelocity().get(d);
-			velocity.set(d, lowVel+rand.nextDouble()*(highVel-lowVel));
+			double lowVel = -maximumVelocity[d];
+			double highVel = maximumVelocity[d];
+			velocity[offset + d] = lowVel+rand.nextDouble()*(highVel-lowVel);
 		}
-		return velocity;
 	}
 	
-	private synchronized void updateGlobalBest(Particle p) {
-		if (bestPosition == null || p.getValue() < bestValue) {
-			bestPosition = p.getPosition();
-			bestValue = p.getValue();
+	// Among equal values found in the same iteration the lowest particle wins, as if particles were updated in order,
+	// so the result does not depend on the order in which threads find them
+	private static boolean beats(double value, int particle, int iteration,
+			double bestValue, int bestParticle, int bestIteration) {
+		return value < bestValue || (value == bestValue && iteration == bestIteration && particle < bestParticle);
+	}
+	
+	// Merged mode: record an improvement in the thread's own best, no other thread sees it until the barrier
+	private void updateLocalBest(SwarmState swarm, int particle, int iteration, WorkerBuffers buffers) {
+		double value = swarm.getValue(particle);
+		if (beats(value, particle, iteration, buffers.bestValue, buffers.bestParticle, buffers.bestIteration)) {
+			swarm.copyPosition(particle, buffers.bestPosition);
+			buffers.bestValue = value;
+			buffers.bestParticle = particle;
+			buffers.bestIteration = iteration;
 		}
 	}
-
-	private Particle getParticle(int index) {
-		ParticleWrapper pw = particles.get(index);
-		if (pw == null) {
-			return null;
+	
+	// Immediate mode: swap in a new snapshot, retrying only while other threads keep publishing worse bests
+	private void publishGlobalBest(SwarmState swarm, int particle, int iteration) {
+		double value = swarm.getValue(particle);
+		BestSnapshot current = best.get();
+		if (!current.isBeatenBy(value, particle, iteration)) {
+			return;
 		}
-		else {
-			return pw.getParticle();
+		BestSnapshot improved = new BestSnapshot(swarm, particle, iteration);
+		while (!best.compareAndSet(current, improved)) {
+			current = best.get();
+			if (!current.isBeatenBy(value, particle, iteration)) {
+				return;
+			}
+		}
+	}
+	
+	// Run by the barrier while every thread waits, in thread order so ties are settled the same way every run
+	private void mergeLocalBests() {
+		BestSnapshot current = best.get();
+		for (WorkerBuffers worker : workers) {
+			if (current.isBeatenBy(worker.bestValue, worker.bestParticle, worker.bestIteration)) {
+				current = new BestSnapshot(worker.bestPosition.clone(), worker.bestValue, worker.bestParticle, worker.bestIteration);
+			}
 		}
+		best.set(current);
 	}
 	
-	private void setParticle(int index, Particle particle) {
-		ParticleWrapper pw = particles.get(index);
-		if (pw == null) {
-			pw = new ParticleWrapper();
-			particles.set(index, pw);
+	// Run once every particle has been updated, while no thread is updating: merge the bests, collect how evenly the
+	// work was spread, then make the generation just written the one to read. Logging happens on the pipeline while
+	// the threads carry on with the next iteration
+	private void endIteration(final int iteration, final long stealCount) {
+		if (config.getGlobalBestUpdate() == GlobalBestUpdate.MERGED) {
+			mergeLocalBests();
 		}
-		pw.setParticle(particle);
+		final BestSnapshot snapshot = best.get();
+		final long time = System.nanoTime();
+		final long evaluationCount = evaluations.get();
+		
+		long maxBusyTime = 0;
+		long totalBusyTime = 0;
+		for (WorkerBuffers worker : workers) {
+			maxBusyTime = Math.max(maxBusyTime, worker.busyTime);
+			totalBusyTime += worker.busyTime;
+			worker.busyTime = 0;
+		}
+		final long maxBusy = maxBusyTime;
+		final long meanBusy = totalBusyTime / config.getNumThreads();
+		
+		iterationBest = snapshot;
+		generation = nextGeneration(); // The generation just written becomes the one to read
+		if (neighbourhoodIndexes != null) {
+			FlightEvents.Event rebuildEvent = FlightEvents.FDR_SEARCH.begin();
+			long start = rebuildEvent != null ? System.nanoTime() : 0;
+			neighbourhoodIndexes[generation].rebuild(); // Nobody is searching while the threads wait
+			if (rebuildEvent != null) {
+				rebuildEvent.commit(config.getNumParticles(), System.nanoTime() - start, "index-rebuild");
+			}
+		}
+		
+		// Double buffered, the generation just written is only read until the iteration after next, and the pipeline
+		// finishes this task before then. In place, the threads log each particle as they go
+		final SwarmState written = generations.length > 1 ? generations[generation] : null;
+		if (metrics != null) {
+			metrics.iterationEnded(iteration, time, evaluationCount);
+		}
+		pipeline.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = bookkeeping != null ? System.nanoTime() : 0;
+				if (written != null) {
+					log.addParticlePositions(iteration, written.getPositions());
+				}
+				log.addBestPosition(iteration, snapshot.position, snapshot.value);
+				log.addTime(iteration, time);
+				log.addLoadBalance(iteration, maxBusy, meanBusy, stealCount);
+				pipeline.iterationCompleted(iteration, snapshot.position, snapshot.value, evaluationCount);
+				if (bookkeeping != null) {
+					bookkeeping.add(Phase.LOGGING, System.nanoTime() - start);
+				}
+			}
+		});
+		if (iterationEvent != null) {
+			iterationEvent.commit(iteration, evaluationCount, snapshot.value);
+		}
+		iterationEvent = FlightEvents.ITERATION.begin(); // The next iteration starts as the threads are released
+	}
+	
+	private List<Double> bestPositionList() {
+		double[] bestPosition = best.get().position;
+		List<Double> position = new ArrayList<Double>(bestPosition.length);
+		for (double x : bestPosition) {
+			position.add(x);
+		}
+		return position;
+	}
+	
+	@Override
+	public double getBestValue() {
+		return best.get().value;
+	}
+	
+	@Override
+	public List<Double> getBestPosition() {
+		return bestPositionList();
+	}
+	
+	@Override
+	public long getEvaluationCount() {
+		return evaluations.get();
+	}
+	
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+	
+	@Override
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	// Whether to end the run before the next iteration
+	private boolean shouldStop() {
+		Long end = deadline;
+		if (Thread.currentThread().isInterrupted() || (end != null && System.nanoTime() - end >= 0)) {
+			stopped = true;
+		}
+		return stopped;
+	}
+	
+	@Override
+	public void addIterationListener(IterationListener listener) {
+		pipeline.addListener(listener);
 	}
 	
 	// performs the optimization algorithm
 	@Override
 	public List<Double> optimize() {
-		// Perform iterations
-		startParticleList(0);
-		return bestPosition;
+		return optimize(0);
 	}
 	
 	// performs optimization with a delay for animation
 	public List<Double> optimize(int timeout) {
 		// Perform iterations
-		startParticleList(timeout);
-		return bestPosition;
+		try {
+			startParticleList(timeout);
+		} catch (RuntimeException e) {
+			failure.compareAndSet(null, e); // Work stealing runs the iterations, and throws, on this thread
+		} catch (Error e) {
+			failure.compareAndSet(null, e);
+		}
+		Throwable t = failure.get(); // A worker's exception would otherwise be lost in the executor
+		if (t == null) {
+			pipeline.finish();
+			return bestPositionList();
+		}
+		pipeline.fail(t); // Listeners hear that the run ended even when it failed
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		throw (Error) t;
+	}
+
+	// Pieces for an OptimizationEngine. Every step of an iteration has a piece for each configured thread, covering
+	// the same particles as that thread would, and the last piece of an iteration to finish ends it
+	@Override
+	public synchronized Runnable nextPiece() {
+		if (isFinished() || piecesStarted == config.getNumThreads()) {
+			return null;
+		}
+		if (pieceStep == null) {
+			while (workers.size() < config.getNumThreads()) { // Work stealing runs only create them on demand
+				createWorker();
+			}
+			pieceStep = firstStep();
+			pieceInertia = config.getInertia();
+			iterationEvent = FlightEvents.ITERATION.begin();
+		}
+		final int piece = piecesStarted++;
+		final Step step = pieceStep;
+		final int iteration = pieceIteration;
+		final double inertia = pieceInertia;
+		return new Runnable() {
+			@Override
+			public void run() {
+				int first = (int) ((long) piece * config.getNumParticles() / config.getNumThreads());
+				int last = (int) ((long) (piece + 1) * config.getNumParticles() / config.getNumThreads());
+				WorkerBuffers buffers = workers.get(piece);
+				buffers.beginWork();
+				updateRange(step, iteration, inertia, generations[generation], generations[nextGeneration()],
+						first, last, buffers);
+				buffers.endWork();
+				finishPiece();
+			}
+		};
+	}
+	
+	// A stopped run finishes between iterations, once every step of the one in progress has run
+	@Override
+	public synchronized boolean isFinished() {
+		return pieceIteration >= config.getNumIterations() ||
+				(piecesStarted == 0 && (pieceStep == null || pieceStep == firstStep()) && shouldStop());
+	}
+	
+	@Override
+	public List<Double> finish() {
+		pipeline.finish();
+		return bestPositionList();
+	}
+	
+	@Override
+	public void fail(Throwable failure) {
+		pipeline.fail(failure);
+	}
+	
+	// The step every iteration starts with, and the only one unless particles are moved and selected separately
+	private Step firstStep() {
+		if (generations.length > 1) {
+			return Step.MOVE_AND_SELECT;
+		}
+		return config.getEvaluationBatchSize() > 0 ? Step.MOVE : Step.UPDATE;
+	}
+	
+	// No piece is handed out between the last piece of a step finishing and the next step starting
+	private void finishPiece() {
+		synchronized (this) {
+			if (++piecesFinished < config.getNumThreads()) {
+				return;
+			}
+			if (pieceStep == Step.MOVE) {
+				pieceStep = Step.SELECT;
+				piecesStarted = piecesFinished = 0;
+				return;
+			}
+		}
+		for (WorkerBuffers worker : workers) {
+			evaluations.addAndGet(worker.evaluations);
+			worker.evaluations = 0;
+		}
+		endIteration(pieceIteration, 0);
+		synchronized (this) {
+			pieceIteration++;
+			pieceInertia = updateInertia(pieceIteration);
+			pieceStep = firstStep();
+			piecesStarted = piecesFinished = 0;
+		}
 	}
 
 	// Starts threads to handle all particle updates
 	private void startParticleList(final int delay) {
+		if (config.getScheduling() == Scheduling.WORK_STEALING) {
+			stealParticleList(delay);
+			return;
+		}
+		ending = shouldStop(); // Threads see it once started, and only the barrier changes it after that
+		iterationEvent = FlightEvents.ITERATION.begin();
 		ExecutorService es = Executors.newCachedThreadPool();
         final int particlesPerThread = config.getNumParticles() / config.getNumThreads(); // Each thread handles at least this many particles
         final int remainder = config.getNumParticles() % config.getNumThreads(); // This many threads get 1 extra
 
         for (int t = 0; t < config.getNumThreads(); t++) {
         	final int thread = t;
+        	final WorkerBuffers buffers = workers.get(t);
             es.execute(new Runnable() {
                 public void run() {
+                	buffers.beginWork();
+                	try {
+                		runIterations();
+                	} catch (RuntimeException e) {
+                		failed(e);
+                	} catch (Error e) {
+                		failed(e);
+                	} finally {
+                		buffers.endWork();
+                	}
+                }
+                
+                private void runIterations() {
                 	double inertia = config.getInertia();
-                	for (int iteration = 0; iteration < config.getNumIterations(); iteration++) { //Thread performs all iterations
-				        for (int p = 0; p < particlesPerThread; p++) { //For each particle in group
-				            int particleNumber = thread * particlesPerThread + p;
-		                    updateParticle(iteration, particleNumber, inertia);
-		                }
-				        if (thread < remainder) { //If this thread has a leftover particle
-				        	updateParticle(iteration, particlesPerThread*config.getNumThreads() + thread, inertia);
-				        }
+                	for (int iteration = 0; iteration < config.getNumIterations() && !ending; iteration++) { //Thread performs all iterations
+                		long start = System.nanoTime();
+                		buffers.startIteration(iterationBest, generation, iteration);
+                		SwarmState from = generations[generation];
+                		SwarmState to = generations[nextGeneration()];
+                		int first = thread * particlesPerThread;
+                		int leftover = particlesPerThread*config.getNumThreads() + thread;
+                		FlightEvents.Event fdrEvent = buffers.beginFdrSearch();
+                		if (config.getEvaluationBatchSize() > 0 || from != to) {
+                			moveParticles(first, first + particlesPerThread, inertia, from, to, buffers);
+                			if (thread < remainder) {
+                				moveParticles(leftover, leftover + 1, inertia, from, to, buffers);
+                			}
+                			if (from == to) {
+                				long waitStart = buffers.startTime();
+                				FlightEvents.Event waitEvent = FlightEvents.BARRIER_WAIT.begin();
+                				try {
+                					evaluationBarrier.await(thread); // Other threads may still be reading personal bests for their FDR search
+                				} catch (InterruptedException e) {
+                					interrupted();
+                					return;
+                				} catch (BrokenBarrierException e) {
+                					return; // Another thread was interrupted or failed
+                				}
+                				buffers.addTime(Phase.WAIT, waitStart);
+                				if (waitEvent != null) {
+                					waitEvent.commit(iteration, thread, "evaluation");
+                				}
+                			}
+                			selectBestPositions(iteration, first, first + particlesPerThread, from, to, buffers);
+                			if (thread < remainder) {
+                				selectBestPositions(iteration, leftover, leftover + 1, from, to, buffers);
+                			}
+                		}
+                		else {
+					        for (int p = 0; p < particlesPerThread; p++) { //For each particle in group
+					            int particleNumber = thread * particlesPerThread + p;
+			                    updateParticle(iteration, particleNumber, inertia, from, buffers);
+			                }
+					        if (thread < remainder) { //If this thread has a leftover particle
+					        	updateParticle(iteration, particlesPerThread*config.getNumThreads() + thread, inertia, from, buffers);
+					        }
+                		}
+                		buffers.endFdrSearch(fdrEvent, particlesPerThread + (thread < remainder ? 1 : 0));
+				        evaluations.addAndGet(buffers.evaluations);
+				        buffers.evaluations = 0;
+				        buffers.busyTime += System.nanoTime() - start;
 				        inertia = updateInertia(iteration+1);
 				        
 				        if (delay > 0) { //if delay is positive, sleep to allow animation
 					        try {
 					        	Thread.sleep(delay);
 							} catch (InterruptedException e) {
-								
+								interrupted();
+								return;
 							}
 				        }
 				        
+				        long waitStart = buffers.startTime();
+				        FlightEvents.Event waitEvent = FlightEvents.BARRIER_WAIT.begin();
 				        try {
-							barrier.await(); // Synchronize after performing all updates in an iteration
+							barrier.await(thread); // Synchronize after performing all updates in an iteration
 						} catch (InterruptedException e) {
-
+							interrupted();
+							return;
 						} catch (BrokenBarrierException e) {
-
+							return; // Another thread was interrupted or failed
 						}
+				        buffers.addTime(Phase.WAIT, waitStart);
+				        if (waitEvent != null) {
+				        	waitEvent.commit(iteration, thread, "iteration");
+				        }
                 	}
 				}
             });
         }
         es.shutdown(); // Terminate and join
-        try {
-			if(!es.awaitTermination(100*(1+delay)*config.getNumParticles()^2,TimeUnit.MILLISECONDS)) {
-				System.err.println("Optimization failed to complete in " + (10*config.getNumIterations()*config.getNumParticles()^2) + " ms.");
-			}
-		} catch (InterruptedException e) {
-			
-		}
+        boolean interrupted = false;
+        while (!es.isTerminated()) {
+        	try {
+        		es.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        	} catch (InterruptedException e) {
+        		interrupted = true;
+        		stop(); // The threads finish the iteration they are in, so the result is a whole iteration's best
+        	}
+        }
+        if (interrupted) {
+        	Thread.currentThread().interrupt();
+        }
+	}
+	
+	// An interrupted thread leaves the barriers broken, which releases every other thread, and the run ends early
+	private void interrupted() {
+		Thread.currentThread().interrupt();
+		stop();
+	}
+	
+	// A thread that threw, in its own updates or in the barrier action's bookkeeping, never arrives at a barrier
+	// again. It breaks them to release every other thread, and optimize() rethrows the first such exception
+	private void failed(Throwable t) {
+		failure.compareAndSet(null, t);
+		stop();
+		barrier.breakBarrier();
+		evaluationBarrier.breakBarrier();
 	}
 	
 	private double updateInertia(int iteration) { //Calculate new inertia
@@ -187,97 +646,359 @@ public class ParticleParallelOptimization implements SwarmOptimization {
 	}
 	
 	//Remaining methods work similarly to SequentialOptimization
-	private void updateParticle(int iteration, int particle, double inertia) {
-		List<Double> velocity = calculateVelocity(particle, inertia);
-		List<Double> position = calculatePosition(particle, velocity);
-		List<Double> bestPosition = selectBestPosition(particle, position);
+	private void updateParticle(int iteration, int particle, double inertia, SwarmState swarm, WorkerBuffers buffers) {
+		int offset = swarm.offset(particle);
+		boolean immediate = config.getGlobalBestUpdate() == GlobalBestUpdate.IMMEDIATE;
+		buffers.beginParticle();
+		calculateVelocity(particle, inertia, immediate ? best.get().position : buffers.bestPosition, swarm, swarm, buffers);
+		calculatePosition(particle, swarm, swarm);
+		buffers.endPhase(Phase.MOVE);
 		
-		//System.out.println("Particle: " + position + ", " + velocity + ", " + function.function(position));
-		setParticle(particle, new Particle(position, velocity, bestPosition, config.function(position), config.function(bestPosition)));
-		updateGlobalBest(getParticle(particle)); //Method is now synchronized
+		swarm.getValues()[particle] = config.function(swarm.getPositions(), offset);
+		buffers.evaluations++;
+		buffers.endPhase(Phase.EVALUATE);
+		selectBestPosition(particle, swarm, swarm);
+		updateGlobalBest(particle, iteration, swarm, buffers);
+		buffers.endPhase(Phase.SELECT);
 
-		log.addParticlePosition(iteration, particle, position);
+		log.addParticlePosition(iteration, particle, swarm.getPositions(), offset);
+		buffers.endPhase(Phase.LOGGING);
 	}
 
-	private List<Double> selectBestPosition(int particle, List<Double> newPosition) {
-		List<Double> currentBestPosition = getParticle(particle).getBestPosition();
-		if (config.function(currentBestPosition) <= config.function(newPosition)) {
-			return currentBestPosition;
+	//Synchronous update, in two steps so threads can wait for each other in between when updating in place,
+	//since other threads may still be reading personal bests for their FDR search. Double buffered, those reads are
+	//all from the other generation.
+	//First move particles first to last - 1 from generation from into generation to, and evaluate them a block at a time
+	private void moveParticles(int first, int last, double inertia, SwarmState from, SwarmState to, WorkerBuffers buffers) {
+		for (int p = first; p < last; p++) {
+			buffers.beginParticle();
+			calculateVelocity(p, inertia, iterationBest.position, from, to, buffers);
+			calculatePosition(p, from, to);
+			buffers.endPhase(Phase.MOVE);
+		}
+		
+		long start = buffers.startTime();
+		FlightEvents.Event batchEvent = FlightEvents.EVALUATION_BATCH.begin();
+		int batchSize = Math.max(1, config.getEvaluationBatchSize());
+		for (int p = first; p < last; p += batchSize) {
+			config.function(to.getPositions(), to.offset(p), Math.min(batchSize, last - p), to.getValues(), p);
+		}
+		if (batchEvent != null) {
+			batchEvent.commit(first, last - first);
+		}
+		buffers.evaluations += last - first;
+		buffers.addTime(Phase.EVALUATE, start);
+	}
+	
+	//Then update the same particles' personal bests, and the global best
+	private void selectBestPositions(int iteration, int first, int last, SwarmState from, SwarmState to, WorkerBuffers buffers) {
+		for (int p = first; p < last; p++) {
+			buffers.beginParticle();
+			selectBestPosition(p, from, to);
+			updateGlobalBest(p, iteration, to, buffers);
+			buffers.endPhase(Phase.SELECT);
+			if (from == to) {
+				log.addParticlePosition(iteration, p, to.getPositions(), to.offset(p)); // Double buffered, endIteration logs them all
+				buffers.endPhase(Phase.LOGGING);
+			}
+		}
+	}
+
+	private void updateGlobalBest(int particle, int iteration, SwarmState swarm, WorkerBuffers buffers) {
+		if (config.getGlobalBestUpdate() == GlobalBestUpdate.IMMEDIATE) {
+			publishGlobalBest(swarm, particle, iteration);
 		}
 		else {
-			return newPosition;
+			updateLocalBest(swarm, particle, iteration, buffers);
+		}
+	}
+
+	// The methods below read a particle's state from generation from and write it to generation to,
+	// which are the same when updating in place
+	
+	private void selectBestPosition(int particle, SwarmState from, SwarmState to) {
+		if (to.getValue(particle) < from.getBestValue(particle)) {
+			to.updateBest(particle);
+		}
+		else if (from != to) {
+			to.copyBest(particle, from); // Carry the old best into the new generation
 		}
 	}
 	
-	private List<Double> calculatePosition(int particle, List<Double> velocity) {
-		List<Double> position = Arrays.asList(new Double[config.getDimensions()]);
-		List<Double> oldPosition = getParticle(particle).getPosition();
+	private void calculatePosition(int particle, SwarmState from, SwarmState to) {
+		double[] oldPosition = from.getPositions();
+		double[] position = to.getPositions();
+		double[] velocity = to.getVelocities();
+		int offset = to.offset(particle);
 		
 		for (int d = 0; d < config.getDimensions(); d++) {
-			double dPos = oldPosition.get(d) + velocity.get(d);
-			position.set(d, Math.min(config.getUpperBounds().get(d), 
-					Math.max(config.getLowerBounds().get(d), dPos)));
-			if (position.get(d) != dPos) {
-				velocity.set(d, -velocity.get(d));
+			double dPos = oldPosition[offset + d] + velocity[offset + d];
+			position[offset + d] = Math.min(upperBounds[d], Math.max(lowerBounds[d], dPos));
+			if (position[offset + d] != dPos) {
+				velocity[offset + d] = -velocity[offset + d];
 			}
 		}
-		
-		return position;
 	}
 
-	private List<Double> calculateVelocity(int particle, double inertia) {
-		List<Double> velocity = Arrays.asList(new Double[config.getDimensions()]);
-		List<Double> oldVelocity = getParticle(particle).getVelocity();
-		List<Double> position = getParticle(particle).getPosition();
-		List<Double> selfBestPosition = getParticle(particle).getBestPosition();
+	private void calculateVelocity(int particle, double inertia, double[] bestPosition, SwarmState from, SwarmState to,
+			WorkerBuffers buffers) {
+		double[] oldVelocity = from.getVelocities();
+		double[] velocity = to.getVelocities();
+		double[] position = from.getPositions();
+		double[] bestPositions = from.getBestPositions();
+		int offset = from.offset(particle);
+		double[] draws = buffers.draws;
+		if (config.getFdrWeight() != 0.0) {
+			long start = buffers.fdrSearchTime >= 0 ? System.nanoTime() : 0;
+			buffers.fdrSearch.search(particle, buffers.fdrSelections);
+			if (buffers.fdrSearchTime >= 0) {
+				buffers.fdrSearchTime += System.nanoTime() - start;
+			}
+			buffers.endPhase(Phase.FDR_SEARCH);
+		}
+		Randoms.fill(particleRandoms[particle], draws, 0, draws.length);
 		for (int d = 0; d < config.getDimensions(); d++) {
-			List<Double> fdrPosition;
+			int fdrIndex;
 			if (config.getFdrWeight() != 0.0) {
-				fdrPosition = bestFitnessDistance(particle, d);
+				fdrIndex = from.offset(buffers.fdrSelections[d]) + d;
 			}
 			else {
-				fdrPosition = selfBestPosition;
+				fdrIndex = offset + d;
 			}
 			
-			double dVelocity = inertia * oldVelocity.get(d) + 
-					rand.nextDouble() * config.getSelfWeight() * (selfBestPosition.get(d) - position.get(d)) + 
-					rand.nextDouble() * config.getBestWeight() * (bestPosition.get(d) - position.get(d)) + 
-					rand.nextDouble() * config.getFdrWeight() * (fdrPosition.get(d) - position.get(d));
-			velocity.set(d, Math.signum(dVelocity) * Math.min(config.getMaximumVelocity().get(d), Math.abs(dVelocity)));
+			double dPosition = position[offset + d];
+			double dVelocity = inertia * oldVelocity[offset + d] +
+					draws[3*d] * config.getSelfWeight() * (bestPositions[offset + d] - dPosition) + 
+					draws[3*d + 1] * config.getBestWeight() * (bestPosition[d] - dPosition) + 
+					draws[3*d + 2] * config.getFdrWeight() * (bestPositions[fdrIndex] - dPosition);
+			velocity[offset + d] = Math.signum(dVelocity) * Math.min(maximumVelocity[d], Math.abs(dVelocity));
 		}
-		return velocity;
 	}
 
-	private List<Double> bestFitnessDistance(int particle, int dimension) {		
-		List<Double> bestFDRPosition = getParticle((particle+1)%config.getNumParticles()).getBestPosition();
-		double bestFDR = fdr(particle, (particle+1)%config.getNumParticles(), dimension);
-		for (int q = particle+1; q < config.getNumParticles(); q++) {
-			double fdr = fdr(particle, q, dimension);
-			if (fdr > bestFDR) {
-				bestFDRPosition = getParticle(q).getBestPosition();
-				bestFDR = fdr;
+	// Work stealing: this thread runs the iterations, and a ForkJoinPool updates the particles of each one
+	private void stealParticleList(int delay) {
+		ForkJoinPool pool = new ForkJoinPool(config.getNumThreads());
+		double inertia = config.getInertia();
+		iterationEvent = FlightEvents.ITERATION.begin();
+		try {
+			for (int iteration = 0; iteration < config.getNumIterations() && !shouldStop(); iteration++) {
+				SwarmState from = generations[generation];
+				SwarmState to = generations[nextGeneration()];
+				long steals = pool.getStealCount();
+				if (from != to) {
+					pool.invoke(new ParticleRange(Step.MOVE_AND_SELECT, iteration, inertia, from, to, 0, config.getNumParticles()));
+				}
+				else if (config.getEvaluationBatchSize() > 0) {
+					pool.invoke(new ParticleRange(Step.MOVE, iteration, inertia, from, to, 0, config.getNumParticles()));
+					pool.invoke(new ParticleRange(Step.SELECT, iteration, inertia, from, to, 0, config.getNumParticles()));
+				}
+				else {
+					pool.invoke(new ParticleRange(Step.UPDATE, iteration, inertia, from, to, 0, config.getNumParticles()));
+				}
+			
+				for (WorkerBuffers worker : workers) {
+					evaluations.addAndGet(worker.evaluations);
+					worker.evaluations = 0;
+				}
+				inertia = updateInertia(iteration+1);
+			
+				if (delay > 0) { //if delay is positive, sleep to allow animation
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt(); // Stops the run before the next iteration
+					}
+				}
+			
+				endIteration(iteration, pool.getStealCount() - steals);
+			}
+		} finally {
+			for (WorkerBuffers worker : workers) {
+				worker.endWork(); // The pool's threads are still alive, and idle
 			}
+			pool.shutdown(); // Also when an update or the bookkeeping threw, which ends the run on this thread
 		}
-		for (int q = 0; q < particle; q++) {
-			double fdr = fdr(particle, q, dimension);
-			if (fdr > bestFDR) {
-				bestFDRPosition = getParticle(q).getBestPosition();
-				bestFDR = fdr;
+	}
+	
+	// Performs one step for particles first to last - 1 with one thread's buffers
+	private void updateRange(Step step, int iteration, double inertia, SwarmState from, SwarmState to, int first, int last,
+			WorkerBuffers buffers) {
+		long start = System.nanoTime();
+		if (buffers.iteration != iteration) {
+			buffers.startIteration(iterationBest, generation, iteration);
+		}
+		FlightEvents.Event fdrEvent = step != Step.SELECT ? buffers.beginFdrSearch() : null;
+		switch (step) {
+		case UPDATE:
+			for (int p = first; p < last; p++) {
+				updateParticle(iteration, p, inertia, from, buffers);
 			}
+			break;
+		case MOVE:
+			moveParticles(first, last, inertia, from, to, buffers);
+			break;
+		case SELECT:
+			selectBestPositions(iteration, first, last, from, to, buffers);
+			break;
+		case MOVE_AND_SELECT:
+			moveParticles(first, last, inertia, from, to, buffers);
+			selectBestPositions(iteration, first, last, from, to, buffers);
+			break;
 		}
-		return bestFDRPosition;
+		buffers.endFdrSearch(fdrEvent, last - first);
+		buffers.busyTime += System.nanoTime() - start;
 	}
 	
-	private double fdr(int currentParticle, int foreignParticle, int dimension) {
-		double fitness = -(getParticle(foreignParticle).getBestValue() - getParticle(currentParticle).getValue());
-		double distance = Math.abs(
-				getParticle(foreignParticle).getBestPosition().get(dimension) - 
-				getParticle(currentParticle).getPosition().get(dimension));
-		if (distance != 0) {
-			return fitness/distance;
+	// What a ParticleRange or an engine's piece does to each of its particles
+	private enum Step {
+		UPDATE, // Move, evaluate and select bests one particle at a time, in place
+		MOVE, // moveParticles
+		SELECT, // selectBestPositions
+		MOVE_AND_SELECT // Both, which is safe when double buffered
+	}
+	
+	// A range of particles that is split in half until it is no larger than the minimum chunk size
+	@SuppressWarnings("serial")
+	private class ParticleRange extends RecursiveAction {
+		private final Step step;
+		private final int iteration;
+		private final double inertia;
+		private final SwarmState from;
+		private final SwarmState to;
+		private final int first; // Particles first to last - 1
+		private final int last;
+		
+		ParticleRange(Step step, int iteration, double inertia, SwarmState from, SwarmState to, int first, int last) {
+			this.step = step;
+			this.iteration = iteration;
+			this.inertia = inertia;
+			this.from = from;
+			this.to = to;
+			this.first = first;
+			this.last = last;
 		}
-		else {
-			return Double.MAX_VALUE;
+		
+		@Override
+		protected void compute() {
+			if (last - first > config.getMinChunkSize()) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new ParticleRange(step, iteration, inertia, from, to, first, middle),
+						new ParticleRange(step, iteration, inertia, from, to, middle, last));
+				return;
+			}
+			
+			updateRange(step, iteration, inertia, from, to, first, last, poolBuffers.get());
+		}
+	}
+
+	// An immutable global best. Readers can use its position without copying, since it is never written again
+	private static class BestSnapshot {
+		private final double[] position;
+		private final double value;
+		private final int particle; // The particle that found position, and the iteration it was found in
+		private final int iteration; // (-1 while initializing)
+		
+		BestSnapshot(SwarmState swarm, int particle, int iteration) {
+			this(new double[swarm.getDimensions()], swarm.getValue(particle), particle, iteration);
+			swarm.copyPosition(particle, position);
+		}
+		
+		BestSnapshot(double[] position, double value, int particle, int iteration) {
+			this.position = position;
+			this.value = value;
+			this.particle = particle;
+			this.iteration = iteration;
+		}
+		
+		boolean isBeatenBy(double value, int particle, int iteration) {
+			return beats(value, particle, iteration, this.value, this.particle, this.iteration);
+		}
+	}
+
+	// Scratch space owned by a single worker thread, allocated once per run
+	private static class WorkerBuffers {
+		private final double[] bestPosition; // The global best at the start of the iteration, or a better
+		private double bestValue; // position found by this thread since then in merged mode
+		private int bestParticle;
+		private int bestIteration;
+		private final FitnessDistanceSearch[] fdrSearches; // Search each generation with this thread's scratch space
+		private FitnessDistanceSearch fdrSearch; // The search of the generation being read
+		private final int[] fdrSelections; // The particle selected by fdrSearch in each dimension
+		private final double[] draws; // Self, best and FDR factors for each dimension, filled once per update
+		private long evaluations = 0; // Evaluations made since they were last added to the run's total
+		private long busyTime = 0; // Nanoseconds spent updating particles in the current iteration
+		private int iteration = -1; // The iteration startIteration was last called for
+		private final RunMetrics.Recorder recorder; // Null when metrics are off
+		private final String fdrStrategy; // Null without FDR
+		private long fdrSearchTime = -1; // Nanoseconds searched while a FdrSearch event records the range, else -1
+		
+		WorkerBuffers(SwarmState swarm, FitnessDistanceSearch[] fdrSearches, FdrStrategy fdrStrategy,
+				RunMetrics.Recorder recorder) {
+			this.recorder = recorder;
+			this.fdrStrategy = fdrStrategy == null ? null : fdrStrategy.name();
+			bestPosition = new double[swarm.getDimensions()];
+			this.fdrSearches = fdrSearches;
+			fdrSelections = new int[swarm.getDimensions()];
+			draws = new double[3 * swarm.getDimensions()];
+		}
+		
+		// Start from a copy of the global best, so velocities never read a best that is being rewritten
+		void startIteration(BestSnapshot global, int generation, int iteration) {
+			System.arraycopy(global.position, 0, bestPosition, 0, bestPosition.length);
+			bestValue = global.value;
+			bestParticle = global.particle;
+			bestIteration = global.iteration;
+			fdrSearch = fdrSearches[generation];
+			this.iteration = iteration;
+		}
+		
+		// Metrics, each a null check when they are off. See RunMetrics.Recorder
+		void beginParticle() {
+			if (recorder != null) {
+				recorder.beginParticle();
+			}
+		}
+		
+		void endPhase(Phase phase) {
+			if (recorder != null) {
+				recorder.endPhase(phase);
+			}
+		}
+		
+		long startTime() {
+			return recorder != null ? System.nanoTime() : 0;
+		}
+		
+		void addTime(Phase phase, long start) {
+			if (recorder != null) {
+				recorder.add(phase, System.nanoTime() - start);
+			}
+		}
+		
+		// A FdrSearch event for the range about to be updated, null unless FDR searches are recorded
+		FlightEvents.Event beginFdrSearch() {
+			FlightEvents.Event event = fdrStrategy != null ? FlightEvents.FDR_SEARCH.begin() : null;
+			fdrSearchTime = event != null ? 0 : -1;
+			return event;
+		}
+		
+		void endFdrSearch(FlightEvents.Event event, int particles) {
+			if (event != null) {
+				event.commit(particles, fdrSearchTime, fdrStrategy);
+				fdrSearchTime = -1;
+			}
+		}
+		
+		void beginWork() {
+			if (recorder != null) {
+				recorder.beginWork();
+			}
+		}
+		
+		void endWork() {
+			if (recorder != null) {
+				recorder.endWork();
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package swarm.pso.service;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Phaser;
+
+// IterationBarrier on a tree of Phasers, so arrivals are counted on small groups of threads instead of one contended
+// counter. Each group's phaser arrives at the root once all its threads have, and the root runs the action.
+// Phasers spin briefly before blocking, so this also suits short iterations at high thread counts.
+public class PhaserIterationBarrier extends IterationBarrier {
+	public static final int DEFAULT_GROUP_SIZE = 8; // Threads per leaf phaser
+
+	private final Phaser root;
+	private final Phaser[] groups; // The phaser each party arrives at
+	private volatile boolean broken = false;
+
+	public PhaserIterationBarrier(int parties, Runnable action) {
+		this(parties, action, DEFAULT_GROUP_SIZE);
+	}
+
+	public PhaserIterationBarrier(int parties, final Runnable action, int groupSize) {
+		if (parties <= 0 || groupSize <= 0) {
+			throw new IllegalArgumentException("A barrier needs at least one party per group");
+		}
+		root = new Phaser() {
+			// Runs in the last thread to arrive, before any thread is released
+			@Override
+			protected boolean onAdvance(int phase, int registeredParties) {
+				if (action != null) {
+					try {
+						action.run();
+					} catch (RuntimeException e) {
+						breakBarrier();
+						throw e;
+					} catch (Error e) {
+						breakBarrier();
+						throw e;
+					}
+				}
+				return false; // Never terminate, the barrier is reused every iteration
+			}
+		};
+
+		groups = new Phaser[parties];
+		if (parties <= groupSize) {
+			root.bulkRegister(parties); // A tree would only add a level
+			for (int p = 0; p < parties; p++) {
+				groups[p] = root;
+			}
+		}
+		else {
+			for (int first = 0; first < parties; first += groupSize) {
+				int size = Math.min(groupSize, parties - first);
+				Phaser group = new Phaser(root, size);
+				for (int p = first; p < first + size; p++) {
+					groups[p] = group;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void await(int party) throws InterruptedException, BrokenBarrierException {
+		if (broken) {
+			throw new BrokenBarrierException();
+		}
+		Phaser group = groups[party];
+		try {
+			group.awaitAdvanceInterruptibly(group.arrive());
+		} catch (InterruptedException e) {
+			breakBarrier();
+			throw e;
+		}
+		if (broken || root.isTerminated()) {
+			throw new BrokenBarrierException();
+		}
+	}
+
+	// The phase the action failed in never advances, so terminating the root is the only way to release the
+	// threads waiting on it. Threads that arrive later see the termination straight away
+	@Override
+	public void breakBarrier() {
+		broken = true;
+		root.forceTermination(); // Releases every other waiting thread
+	}
+}
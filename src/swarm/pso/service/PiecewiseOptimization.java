@@ -0,0 +1,21 @@
+package swarm.pso.service;
+
+import java.util.List;
+
+// An optimization that an OptimizationEngine can run a piece at a time on shared threads, instead of on threads of
+// its own. No piece ever waits for another: finishing the last piece of a step makes the next step's pieces available.
+// Use either optimize() or the pieces for a run, never both.
+public interface PiecewiseOptimization extends SwarmOptimization {
+	// A piece that can run now, or null if there is none until pieces already handed out finish
+	public Runnable nextPiece();
+	
+	// Whether every piece has been handed out and finished
+	public boolean isFinished();
+	
+	// Called once when finished, completes the log and returns the best position, as optimize() would
+	public List<Double> finish();
+	
+	// Called once instead of finish when a piece threw failure and the run has been abandoned, so the listeners
+	// still hear that it ended
+	public void fail(Throwable failure);
+}
@@ -0,0 +1,26 @@
+package swarm.pso.service;
+
+//The Reactive Streams interfaces, which Java 9 copied into java.util.concurrent.Flow. They have the same methods and
+//the same rules: a subscriber gets onSubscribe first, then at most as many onNext calls as it has requested, one at a
+//time, then onComplete or onError unless it cancelled. Moving to the JDK's interfaces only takes changing the imports.
+public final class ReactiveStreams {
+	private ReactiveStreams() {
+	}
+
+	public interface Publisher<T> {
+		public void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public interface Subscriber<T> {
+		public void onSubscribe(Subscription subscription);
+		public void onNext(T item);
+		public void onError(Throwable throwable);
+		public void onComplete();
+	}
+
+	public interface Subscription {
+		// Asks for up to n more items. n must be positive
+		public void request(long n);
+		public void cancel();
+	}
+}
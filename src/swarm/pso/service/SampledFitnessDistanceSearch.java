@@ -0,0 +1,77 @@
+package swarm.pso.service;
+
+import java.util.Random;
+
+import swarm.pso.structures.SwarmState;
+
+// Approximate FDR search that compares against a fixed number of particles drawn at random for every search,
+// so its cost does not depend on the size of the swarm. Candidates are drawn with replacement.
+// Falls back to the exact search when the sample would be as large as the swarm.
+// Candidates are drawn either from one generator for every search, or from a generator per searching particle,
+// which makes the candidates independent of which thread searches for which particle.
+public class SampledFitnessDistanceSearch extends FitnessDistanceSearch {
+	private final SwarmState swarm;
+	private final Random rand; // Owned by this search, so parallel searches never contend on a generator
+	private final Random[] particleRandoms; // Indexed by searching particle, or null to always use rand
+
+	private final int[] candidates; // The particles drawn for the current search
+	private final double[] fitness; // How far each candidate surpasses the searching particle
+
+	public SampledFitnessDistanceSearch(SwarmState swarm, int numCandidates, Random rand) {
+		super(swarm);
+		this.swarm = swarm;
+		this.rand = rand;
+		particleRandoms = null;
+		candidates = new int[numCandidates];
+		fitness = new double[numCandidates];
+	}
+
+	// Each particle's generator must only be used by the thread currently updating that particle
+	public SampledFitnessDistanceSearch(SwarmState swarm, int numCandidates, Random[] particleRandoms) {
+		super(swarm);
+		if (particleRandoms.length != swarm.getNumParticles()) {
+			throw new IllegalArgumentException("Expected one generator per particle");
+		}
+		this.swarm = swarm;
+		rand = null;
+		this.particleRandoms = particleRandoms;
+		candidates = new int[numCandidates];
+		fitness = new double[numCandidates];
+	}
+
+	@Override
+	public void search(int particle, int[] selections) {
+		int numParticles = swarm.getNumParticles();
+		if (candidates.length >= numParticles - 1) {
+			super.search(particle, selections);
+			return;
+		}
+
+		double[] positions = swarm.getPositions();
+		double[] bestPositions = swarm.getBestPositionsByDimension();
+		double value = swarm.getValue(particle);
+		int offset = swarm.offset(particle);
+		Random rand = particleRandoms != null ? particleRandoms[particle] : this.rand;
+
+		for (int i = 0; i < candidates.length; i++) {
+			int q = (particle + 1 + rand.nextInt(numParticles - 1)) % numParticles; // Never the particle itself
+			candidates[i] = q;
+			fitness[i] = -(swarm.getBestValue(q) - value);
+		}
+
+		for (int d = 0; d < swarm.getDimensions(); d++) {
+			double position = positions[offset + d];
+			int column = d * numParticles;
+			double best = fdr(fitness[0], Math.abs(bestPositions[column + candidates[0]] - position));
+			int selection = candidates[0];
+			for (int i = 1; i < candidates.length; i++) {
+				double fdr = fdr(fitness[i], Math.abs(bestPositions[column + candidates[i]] - position));
+				if (fdr > best) {
+					best = fdr;
+					selection = candidates[i];
+				}
+			}
+			selections[d] = selection;
+		}
+	}
+}
@@ -1,123 +1,344 @@
 package swarm.pso.service;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import swarm.pso.logging.FlightEvents;
 import swarm.pso.logging.Logging;
-import swarm.pso.structures.Particle;
+import swarm.pso.logging.RunMetrics;
+import swarm.pso.logging.RunMetrics.Phase;
+import swarm.pso.random.Randoms;
+import swarm.pso.structures.SwarmState;
 import swarm.pso.structures.config.SwarmConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
 
 //This class represents our first, sequential, implementation of FDR PSO
-public class SequentialOptimization implements SwarmOptimization {
+public class SequentialOptimization implements PiecewiseOptimization {
 	private final SwarmConfiguration config; // SwarmConfiguration has info about the function and particle behavior
 	
-	private final List<Particle> particles; // The structures containing each particle's state information
+	private final SwarmState swarm; // The primitive arrays containing each particle's state information, updated in place
 	
-	private List<Double> bestPosition = null; // the parameters that give the best known value
+	private double[] bestPosition = null; // the parameters that give the best known value
 	private double bestValue; // the best known value of the function
+	private volatile BestSnapshot published; // A copy of the best as of the end of the last iteration, for other threads
+	
+	private long evaluations = 0; // Number of times the function has been called by this run
 	
 	private double inertia; // The current inertia, linearly decreases from config's inertia to minInertia
 	
-	private final Random rand; // random number generation
+	private final double[] lowerBounds; // Unboxed copies of the configuration's bounds for the inner loops
+	private final double[] upperBounds;
+	private final double[] maximumVelocity;
+	
+	private final FitnessDistanceIndex neighbourhoodIndex; // Rebuilt every iteration for the neighbourhood FDR strategy, otherwise null
+	private final FitnessDistanceSearch fdrSearch; // Finds the best FDR particle in every dimension
+	private final int[] fdrSelections; // The particle selected by fdrSearch in each dimension
+	private long fdrSearchTime = -1; // Nanoseconds searched this iteration while a FdrSearch event records it, else -1
+	
+	private final Random rand; // random number generation, pass a BulkRandom such as Xoshiro256Random for faster updates
+	private final double[] draws; // The self, best and FDR factors for each dimension of the particle being updated
+	
+	private volatile boolean stopped = false; // Set by stop(), a passed deadline or an interrupt, and never cleared
+	private volatile Long deadline = null; // In System.nanoTime() terms, null for none
+	
+	private int pieceIteration = 0; // Run by an OptimizationEngine, the next iteration to hand out,
+	private boolean pieceRunning = false; // and whether the last one handed out is still running. Guarded by this
 	
 	private final Logging log; // used to record state information
+	private final RunMetrics metrics; // The log's metrics, null when they are off
+	private final RunMetrics.Recorder recorder; // Times the optimizing thread's phases, null when metrics are off
+	private final RunMetrics.Recorder bookkeeping; // Times the pipeline's tasks, null when metrics are off
+	private final IterationPipeline pipeline = new IterationPipeline(); // Logs each iteration's best while the next one runs
 	
 	public SequentialOptimization(SwarmConfiguration config, Random rand, Logging log) {
 		this.config = config;
 		inertia = config.getInertia();
 		this.rand = rand;
 		this.log = log;
+		draws = new double[3 * config.getDimensions()];
+		
+		lowerBounds = toArray(config.getLowerBounds());
+		upperBounds = toArray(config.getUpperBounds());
+		maximumVelocity = toArray(config.getMaximumVelocity());
 		
+		metrics = log.getMetrics();
+		recorder = metrics == null ? null : metrics.newRecorder("optimizer");
+		bookkeeping = metrics == null ? null : metrics.newRecorder("bookkeeping");
 		log.setStartTime();
 		
-		particles = Arrays.asList(new Particle[config.getNumParticles()]);
+		swarm = new SwarmState(config.getNumParticles(), config.getDimensions());
 		
-		//Initialize particles
+		//Initialize particles, evaluating them in batches after every random draw so the draws stay in the same order
 		for (int p = 0; p < config.getNumParticles(); p++) {
-			List<Double> initialPosition = initialPosition();
-			double initialValue = config.function(initialPosition);
-			List<Double> initialVelocity = initialVelocity();
-			setParticle(p, new Particle(initialPosition, initialVelocity, 
-					initialPosition, initialValue, initialValue));
-			updateGlobalBest(getParticle(p));
+			int offset = swarm.offset(p);
+			initialPosition(swarm.getPositions(), offset);
+			initialVelocity(swarm.getVelocities(), offset);
 		}
+		int batchSize = Math.max(1, config.getEvaluationBatchSize());
+		for (int first = 0; first < config.getNumParticles(); first += batchSize) {
+			int count = Math.min(batchSize, config.getNumParticles() - first);
+			config.function(swarm.getPositions(), swarm.offset(first), count, swarm.getValues(), first);
+			evaluations += count;
+		}
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			swarm.updateBest(p);
+			updateGlobalBest(p);
+		}
+		published = new BestSnapshot(bestPosition.clone(), bestValue);
+		
+		if (config.getFdrWeight() != 0.0 && config.getFdrStrategy() == FdrStrategy.NEIGHBOURHOOD) {
+			neighbourhoodIndex = new FitnessDistanceIndex(swarm, config.getFdrCandidates());
+		}
+		else {
+			neighbourhoodIndex = null;
+		}
+		fdrSearch = createFdrSearch();
+		fdrSelections = new int[config.getDimensions()];
+	}
+	
+	private FitnessDistanceSearch createFdrSearch() {
+		if (neighbourhoodIndex != null) {
+			return new NeighbourhoodFitnessDistanceSearch(swarm, neighbourhoodIndex, config.getFdrCandidates());
+		}
+		else if (config.getFdrStrategy() == FdrStrategy.SAMPLED) {
+			return new SampledFitnessDistanceSearch(swarm, config.getFdrCandidates(), new Random(rand.nextLong()));
+		}
+		else {
+			return new FitnessDistanceSearch(swarm);
+		}
+	}
+	
+	private static double[] toArray(List<Double> list) {
+		double[] array = new double[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
 	}
 	
 	//Randomly select initial positions on domain
-	private List<Double> initialPosition() {
-		List<Double> position = Arrays.asList(new Double[config.getDimensions()]);
+	private void initialPosition(double[] position, int offset) {
 		for (int d = 0; d < config.getDimensions(); d++) {
-			Double lowPos = config.getLowerBounds().get(d);
-			Double highPos = config.getUpperBounds().get(d);
-			position.set(d, lowPos+rand.nextDouble()*(highPos-lowPos));
+			double lowPos = lowerBounds[d];
+			double highPos = upperBounds[d];
+			position[offset + d] = lowPos+rand.nextDouble()*(highPos-lowPos);
 		}
-		return position;
 	}
 
 	//Randomly select initial velocities within max velocity bounds
-	private List<Double> initialVelocity() {
-		List<Double> velocity = Arrays.asList(new Double[config.getDimensions()]);
+	private void initialVelocity(double[] velocity, int offset) {
 		for (int d = 0; d < config.getDimensions(); d++) {
 			//Double lowPos = lowerBounds.get(d);
 			//Double highPos = upperBounds.get(d);
 			//Double lowVel = lowPos - highPos;
 			//Double highVel = highPos - lowPos;
-			Double lowVel = -config.getMaximumVelocity().get(d);
-			Double highVel = config.getMaximumVelocity().get(d);
-			velocity.set(d, lowVel+rand.nextDouble()*(highVel-lowVel));
+			double lowVel = -maximumVelocity[d];
+			double highVel = maximumVelocity[d];
+			velocity[offset + d] = lowVel+rand.nextDouble()*(highVel-lowVel);
 		}
-		return velocity;
 	}
 	
 	//If particle p has a better value than the current best, replace the current best
-	private void updateGlobalBest(Particle p) {
-		if (bestPosition == null || p.getValue() < bestValue) {
-			bestPosition = p.getPosition();
-			bestValue = p.getValue();
+	private void updateGlobalBest(int particle) {
+		if (bestPosition == null || swarm.getValue(particle) < bestValue) {
+			if (bestPosition == null) {
+				bestPosition = new double[config.getDimensions()];
+			}
+			swarm.copyPosition(particle, bestPosition);
+			bestValue = swarm.getValue(particle);
 		}
 	}
-
-	private Particle getParticle(int index) {
-		return particles.get(index);
+	
+	private List<Double> bestPositionList() {
+		double[] bestPosition = published.position;
+		List<Double> position = new ArrayList<Double>(bestPosition.length);
+		for (double x : bestPosition) {
+			position.add(x);
+		}
+		return position;
+	}
+	
+	@Override
+	public double getBestValue() {
+		return published.value;
+	}
+	
+	@Override
+	public List<Double> getBestPosition() {
+		return bestPositionList();
+	}
+	
+	@Override
+	public void stop() {
+		stopped = true;
 	}
 	
-	private void setParticle(int index, Particle particle) {
-		particles.set(index, particle);
+	@Override
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	// Whether to end the run before the next iteration
+	private boolean shouldStop() {
+		Long end = deadline;
+		if (Thread.currentThread().isInterrupted() || (end != null && System.nanoTime() - end >= 0)) {
+			stopped = true;
+		}
+		return stopped;
+	}
+	
+	//Only safe to call from the optimizing thread, or once optimize() has returned
+	@Override
+	public long getEvaluationCount() {
+		return evaluations;
+	}
+	
+	@Override
+	public void addIterationListener(IterationListener listener) {
+		pipeline.addListener(listener);
 	}
 	
 	//Perform the optimization algorithm by performing a list update for every iteration
 	@Override
 	public List<Double> optimize() {
-		// Perform iterations
-		for (int i = 0; i < config.getNumIterations(); i++) {
-			updateParticleList(i);
+		beginWork();
+		try {
+			// Perform iterations
+			for (int i = 0; i < config.getNumIterations() && !shouldStop(); i++) {
+				updateParticleList(i);
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+			throw e;
+		} catch (Error e) {
+			fail(e);
+			throw e;
+		} finally {
+			endWork();
 		}
-		return bestPosition;
+		pipeline.finish();
+		return bestPositionList();
 	}
 	
 	//Same as optimize(), but delay between iterations to allow animation
 	public List<Double> optimize(int timeout) {
-		// Perform iterations
-		for (int i = 0; i < config.getNumIterations(); i++) {
-			updateParticleList(i);
-			try {
-				Thread.sleep(timeout);
-			} catch (InterruptedException e) {
-				
+		beginWork();
+		try {
+			// Perform iterations
+			for (int i = 0; i < config.getNumIterations() && !shouldStop(); i++) {
+				updateParticleList(i);
+				try {
+					Thread.sleep(timeout);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt(); // Stops the run before the next iteration
+				}
 			}
+		} catch (RuntimeException e) {
+			fail(e);
+			throw e;
+		} catch (Error e) {
+			fail(e);
+			throw e;
+		} finally {
+			endWork();
+		}
+		pipeline.finish();
+		return bestPositionList();
+	}
+	
+	//Pieces for an OptimizationEngine, one iteration each, handed out one at a time
+	@Override
+	public synchronized Runnable nextPiece() {
+		if (pieceRunning || isFinished()) {
+			return null;
 		}
-		return bestPosition;
+		pieceRunning = true;
+		final int iteration = pieceIteration;
+		return new Runnable() {
+			@Override
+			public void run() {
+				beginWork();
+				updateParticleList(iteration);
+				endWork();
+				synchronized (SequentialOptimization.this) {
+					pieceIteration++;
+					pieceRunning = false;
+				}
+			}
+		};
+	}
+	
+	@Override
+	public synchronized boolean isFinished() {
+		return pieceIteration >= config.getNumIterations() || (!pieceRunning && shouldStop());
+	}
+	
+	@Override
+	public List<Double> finish() {
+		pipeline.finish();
+		return bestPositionList();
+	}
+	
+	@Override
+	public void fail(Throwable failure) {
+		pipeline.fail(failure);
 	}
 	
 	//iterate over all particles and update their current states
 	private void updateParticleList(int iteration) {
-		for (int p = 0; p < config.getNumParticles(); p++) {
-			updateParticle(iteration, p, inertia);
+		FlightEvents.Event iterationEvent = FlightEvents.ITERATION.begin();
+		if (neighbourhoodIndex != null) {
+			FlightEvents.Event rebuildEvent = FlightEvents.FDR_SEARCH.begin();
+			long start = rebuildEvent != null ? System.nanoTime() : startTime();
+			neighbourhoodIndex.rebuild(); // Candidates for the neighbourhood FDR search come from this iteration's bests
+			addTime(Phase.FDR_SEARCH, start);
+			if (rebuildEvent != null) {
+				rebuildEvent.commit(config.getNumParticles(), System.nanoTime() - start, "index-rebuild");
+			}
+		}
+		FlightEvents.Event fdrEvent = config.getFdrWeight() != 0.0 ? FlightEvents.FDR_SEARCH.begin() : null;
+		fdrSearchTime = fdrEvent != null ? 0 : -1;
+		if (config.getEvaluationBatchSize() > 0) {
+			updateParticleBatches(iteration, inertia);
+		}
+		else {
+			for (int p = 0; p < config.getNumParticles(); p++) {
+				updateParticle(iteration, p, inertia);
+			}
+		}
+		if (fdrEvent != null) {
+			fdrEvent.commit(config.getNumParticles(), fdrSearchTime, config.getFdrStrategy().name());
 		}
 		updateInertia(iteration+1); // After iteration, decrease inertia
-		log.addBestPosition(iteration, bestPosition); // Log overall best and current time
-		log.addTime(iteration, System.nanoTime());
+		endIteration(iteration, System.nanoTime());
+		if (iterationEvent != null) {
+			iterationEvent.commit(iteration, evaluations, bestValue);
+		}
+	}
+	
+	// Log overall best and the time the iteration ended, and tell the listeners, while the next iteration runs.
+	// The best position is copied since the next iteration updates it in place
+	private void endIteration(final int iteration, final long time) {
+		final double[] position = bestPosition.clone();
+		final double value = bestValue;
+		final long evaluationCount = evaluations;
+		published = new BestSnapshot(position, value);
+		if (metrics != null) {
+			metrics.iterationEnded(iteration, time, evaluationCount);
+		}
+		pipeline.submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = bookkeeping != null ? System.nanoTime() : 0;
+				log.addBestPosition(iteration, position, value);
+				log.addTime(iteration, time);
+				pipeline.iterationCompleted(iteration, position, value, evaluationCount);
+				if (bookkeeping != null) {
+					bookkeeping.add(Phase.LOGGING, System.nanoTime() - start);
+				}
+			}
+		});
 	}
 	
 	// Calculate linear decreasing inertia value for this iteration
@@ -127,106 +348,169 @@ public class SequentialOptimization implements SwarmOptimization {
 	}
 	
 	private void updateParticle(int iteration, int particle, double inertia) {
-		List<Double> velocity = calculateVelocity(particle, inertia); //calculate new velocity
-		List<Double> position = calculatePosition(particle, velocity); //modify particle position
-		List<Double> bestPosition = selectBestPosition(particle, position); //determine whether this position is a personal best
+		int offset = swarm.offset(particle);
+		beginParticle();
+		calculateVelocity(particle, inertia); //calculate new velocity
+		calculatePosition(particle); //modify particle position
+		endPhase(Phase.MOVE);
+		swarm.getValues()[particle] = config.function(swarm.getPositions(), offset); //evaluate the new position, exactly once
+		evaluations++;
+		endPhase(Phase.EVALUATE);
+		selectBestPosition(particle); //determine whether this position is a personal best
 		
-		//Place a new particle in this particle's spot
-		setParticle(particle, new Particle(position, velocity, bestPosition, 
-				config.function(position), config.function(bestPosition)));
-		updateGlobalBest(getParticle(particle)); //Determine if this is a new record
+		updateGlobalBest(particle); //Determine if this is a new record
+		endPhase(Phase.SELECT);
 		
-		log.addParticlePosition(iteration, particle, position); //Log this particle's new state
+		log.addParticlePosition(iteration, particle, swarm.getPositions(), offset); //Log this particle's new state
+		endPhase(Phase.LOGGING);
 	}
 	
-	//Pick the position with the best value
-	private List<Double> selectBestPosition(int particle, List<Double> newPosition) {
-		List<Double> currentBestPosition = getParticle(particle).getBestPosition();
-		if (config.function(currentBestPosition) <= config.function(newPosition)) {
-			return currentBestPosition;
+	//Batch mode: move every particle first, then evaluate the new positions a block at a time.
+	//No best changes until all particles have moved, so every particle sees the previous iteration's bests.
+	private void updateParticleBatches(int iteration, double inertia) {
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			beginParticle();
+			calculateVelocity(p, inertia);
+			calculatePosition(p);
+			endPhase(Phase.MOVE);
 		}
-		else {
-			return newPosition;
+		
+		long start = startTime();
+		FlightEvents.Event batchEvent = FlightEvents.EVALUATION_BATCH.begin();
+		int batchSize = config.getEvaluationBatchSize();
+		for (int first = 0; first < config.getNumParticles(); first += batchSize) {
+			int count = Math.min(batchSize, config.getNumParticles() - first);
+			config.function(swarm.getPositions(), swarm.offset(first), count, swarm.getValues(), first);
+			evaluations += count;
+		}
+		if (batchEvent != null) {
+			batchEvent.commit(0, config.getNumParticles());
+		}
+		addTime(Phase.EVALUATE, start);
+		
+		for (int p = 0; p < config.getNumParticles(); p++) {
+			beginParticle();
+			selectBestPosition(p);
+			updateGlobalBest(p);
+			endPhase(Phase.SELECT);
+			log.addParticlePosition(iteration, p, swarm.getPositions(), swarm.offset(p));
+			endPhase(Phase.LOGGING);
+		}
+	}
+	
+	//Keep the position with the best value as the particle's personal best, the old best wins ties
+	private void selectBestPosition(int particle) {
+		if (swarm.getValue(particle) < swarm.getBestValue(particle)) {
+			swarm.updateBest(particle);
 		}
 	}
 	
 	//update position based on velocity
-	private List<Double> calculatePosition(int particle, List<Double> velocity) {
-		List<Double> position = Arrays.asList(new Double[config.getDimensions()]);
-		List<Double> oldPosition = getParticle(particle).getPosition();
+	private void calculatePosition(int particle) {
+		updatePosition(swarm, particle, lowerBounds, upperBounds);
+	}
+
+	//perform the infamous velocity update
+	private void calculateVelocity(int particle, double inertia) {
+		if (config.getFdrWeight() != 0.0) {
+			long start = fdrSearchTime >= 0 ? System.nanoTime() : 0;
+			fdrSearch.search(particle, fdrSelections); //Search for the best FDR particle in every dimension
+			if (fdrSearchTime >= 0) {
+				fdrSearchTime += System.nanoTime() - start;
+			}
+			endPhase(Phase.FDR_SEARCH);
+		}
+		Randoms.fill(rand, draws, 0, draws.length); //Same order as drawing self, best and FDR factors one dimension at a time
+		updateVelocity(swarm, particle, inertia, draws, fdrSelections, config.getSelfWeight(), config.getBestWeight(),
+				config.getFdrWeight(), bestPosition, maximumVelocity);
+	}
+	
+	// The two kernels on their own, package-private and static so the benchmarks time the same code the swarm runs.
+	// Moves the particle by its velocity, clamped to the bounds, bouncing off the walls it hits
+	static void updatePosition(SwarmState swarm, int particle, double[] lowerBounds, double[] upperBounds) {
+		double[] position = swarm.getPositions();
+		double[] velocity = swarm.getVelocities();
+		int offset = swarm.offset(particle);
 		
 		//for each dimension
-		for (int d = 0; d < config.getDimensions(); d++) {
-			double dPos = oldPosition.get(d) + velocity.get(d);
-			position.set(d, Math.min(config.getUpperBounds().get(d), 
-					Math.max(config.getLowerBounds().get(d), dPos)));
+		for (int d = 0; d < swarm.getDimensions(); d++) {
+			double dPos = position[offset + d] + velocity[offset + d];
+			position[offset + d] = Math.min(upperBounds[d], Math.max(lowerBounds[d], dPos));
 			//bounce if we hit a wall
-			if (position.get(d) != dPos) {
-				velocity.set(d, -velocity.get(d));
+			if (position[offset + d] != dPos) {
+				velocity[offset + d] = -velocity[offset + d];
 			}
 		}
-		
-		return position;
 	}
-
-	//perform the infamous velocity update
-	private List<Double> calculateVelocity(int particle, double inertia) {
-		List<Double> velocity = Arrays.asList(new Double[config.getDimensions()]);
-		List<Double> oldVelocity = getParticle(particle).getVelocity();
-		List<Double> position = getParticle(particle).getPosition();
-		List<Double> selfBestPosition = getParticle(particle).getBestPosition();
-		for (int d = 0; d < config.getDimensions(); d++) {
-			List<Double> fdrPosition;
-			if (config.getFdrWeight() != 0.0) { 
-				fdrPosition = bestFitnessDistance(particle, d); //Search for the best FDR particle
+	
+	// The velocity from the 3 draws per dimension and, with a non-zero FDR weight, the FDR particle of each dimension
+	static void updateVelocity(SwarmState swarm, int particle, double inertia, double[] draws, int[] fdrSelections,
+			double selfWeight, double bestWeight, double fdrWeight, double[] bestPosition, double[] maximumVelocity) {
+		double[] velocity = swarm.getVelocities();
+		double[] position = swarm.getPositions();
+		double[] bestPositions = swarm.getBestPositions();
+		int offset = swarm.offset(particle);
+		for (int d = 0; d < swarm.getDimensions(); d++) {
+			int fdrIndex;
+			if (fdrWeight != 0.0) { 
+				fdrIndex = swarm.offset(fdrSelections[d]) + d;
 			}
 			else {
-				fdrPosition = selfBestPosition; //If Non-FDR PSO skip the expensive search
+				fdrIndex = offset + d; //If Non-FDR PSO skip the expensive search
 			}
-			double dVelocity = inertia * oldVelocity.get(d) + 
-					rand.nextDouble() * config.getSelfWeight() * (selfBestPosition.get(d) - position.get(d)) + 
-					rand.nextDouble() * config.getBestWeight() * (bestPosition.get(d) - position.get(d)) + 
-					rand.nextDouble() * config.getFdrWeight() * (fdrPosition.get(d) - position.get(d)); // Weighted sum of attractive points
+			double dPosition = position[offset + d];
+			double dVelocity = inertia * velocity[offset + d] + 
+					draws[3*d] * selfWeight * (bestPositions[offset + d] - dPosition) + 
+					draws[3*d + 1] * bestWeight * (bestPosition[d] - dPosition) + 
+					draws[3*d + 2] * fdrWeight * (bestPositions[fdrIndex] - dPosition); // Weighted sum of attractive points
 			//Clamp velocity to max
-			velocity.set(d, Math.signum(dVelocity) * Math.min(config.getMaximumVelocity().get(d), Math.abs(dVelocity)));
+			velocity[offset + d] = Math.signum(dVelocity) * Math.min(maximumVelocity[d], Math.abs(dVelocity));
 		}
-		return velocity;
 	}
 	
-	//Find the position of the particle with the best FDR
-	private List<Double> bestFitnessDistance(int particle, int dimension) {
-		
-		List<Double> bestFDRPosition = getParticle((particle+1)%config.getNumParticles()).getBestPosition();
-		double bestFDR = fdr(particle, (particle+1)%config.getNumParticles(), dimension);
-		for (int q = particle+1; q < config.getNumParticles(); q++) {
-			double fdr = fdr(particle, q, dimension); //Calculate fdr, compare with current max
-			if (fdr > bestFDR) {
-				bestFDRPosition = getParticle(q).getBestPosition();
-				bestFDR = fdr;
-			}
+	// Metrics, each a null check when they are off. See RunMetrics.Recorder
+	private void beginParticle() {
+		if (recorder != null) {
+			recorder.beginParticle();
 		}
-		for (int q = 0; q < particle; q++) {
-			double fdr = fdr(particle, q, dimension);
-			if (fdr > bestFDR) {
-				bestFDRPosition = getParticle(q).getBestPosition();
-				bestFDR = fdr;
-			}
+	}
+	
+	private void endPhase(Phase phase) {
+		if (recorder != null) {
+			recorder.endPhase(phase);
 		}
-		return bestFDRPosition;
 	}
 	
-	//Determine a single FDR
-	private double fdr(int currentParticle, int foreignParticle, int dimension) {
-		//Fitness is how far a particle surpasses this particle
-		double fitness = -(getParticle(foreignParticle).getBestValue() - getParticle(currentParticle).getValue());
-		double distance = Math.abs(
-				getParticle(foreignParticle).getBestPosition().get(dimension) - 
-				getParticle(currentParticle).getPosition().get(dimension));
-		if (distance != 0) {
-			return fitness/distance; //Perform the ratio
+	private long startTime() {
+		return recorder != null ? System.nanoTime() : 0;
+	}
+	
+	private void addTime(Phase phase, long start) {
+		if (recorder != null) {
+			recorder.add(phase, System.nanoTime() - start);
 		}
-		else {
-			return Double.MAX_VALUE; //Handle divides by zero
+	}
+	
+	private void beginWork() {
+		if (recorder != null) {
+			recorder.beginWork();
+		}
+	}
+	
+	private void endWork() {
+		if (recorder != null) {
+			recorder.endWork();
+		}
+	}
+	
+	// An immutable copy of the global best. Readers can use its position without copying, since it is never written again
+	private static class BestSnapshot {
+		private final double[] position;
+		private final double value;
+		
+		BestSnapshot(double[] position, double value) {
+			this.position = position;
+			this.value = value;
 		}
 	}
 }
\ No newline at end of file
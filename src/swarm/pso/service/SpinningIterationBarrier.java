@@ -0,0 +1,130 @@
+package swarm.pso.service;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// IterationBarrier on a single arrival counter. Waiting threads first spin on the current phase, which costs
+// nothing to wake from when iterations take microseconds, and only park once the wait is long enough that giving up
+// the CPU is cheaper. The last arrival unparks the threads that did park.
+// On a single processor spinning only delays the threads being waited for, so there it parks straight away.
+public class SpinningIterationBarrier extends IterationBarrier {
+	public static final int DEFAULT_SPINS = 1 << 14; // Checks of the phase before parking, a few microseconds
+
+	private static final int WAITING = 0; // States of a phase
+	private static final int RELEASED = 1;
+	private static final int BROKEN = 2;
+
+	private final int parties;
+	private final Runnable action; // May be null
+	private final int spins;
+
+	private final AtomicInteger arrived = new AtomicInteger(); // Threads that have arrived in the current phase
+	private volatile Phase phase = new Phase(); // Replaced by the last arrival to release everyone
+
+	public SpinningIterationBarrier(int parties, Runnable action) {
+		this(parties, action, Runtime.getRuntime().availableProcessors() > 1 ? DEFAULT_SPINS : 0);
+	}
+
+	public SpinningIterationBarrier(int parties, Runnable action, int spins) {
+		if (parties <= 0) {
+			throw new IllegalArgumentException("A barrier needs at least one party");
+		}
+		this.parties = parties;
+		this.action = action;
+		this.spins = spins;
+	}
+
+	@Override
+	public void await(int party) throws InterruptedException, BrokenBarrierException {
+		Phase current = phase;
+		while (current.state.get() == RELEASED) {
+			current = current.next; // This thread got here before the last arrival of that phase replaced it
+		}
+		if (current.state.get() == BROKEN) {
+			throw new BrokenBarrierException();
+		}
+		if (arrived.incrementAndGet() == parties) {
+			arrived.set(0); // Nobody arrives again until the phase changes
+			Phase next = new Phase();
+			try {
+				if (action != null) {
+					action.run();
+				}
+			} catch (RuntimeException e) {
+				breakBarrier(current);
+				throw e;
+			} catch (Error e) {
+				breakBarrier(current);
+				throw e;
+			}
+			current.next = next; // Before the release, which publishes it to the threads released
+			if (!current.state.compareAndSet(WAITING, RELEASED)) {
+				throw new BrokenBarrierException(); // A waiting thread was interrupted while the action ran
+			}
+			phase = next;
+			current.unparkAll();
+			return;
+		}
+
+		for (int i = 0; i < spins && current.state.get() == WAITING; i++) {
+			// Spin
+		}
+		if (current.state.get() == WAITING) {
+			// Unparked by the last arrival, or the phase already changed and the loop never parks
+			current.parked.add(Thread.currentThread());
+			boolean interrupted = false;
+			while (current.state.get() == WAITING) {
+				if (Thread.interrupted()) {
+					if (breakBarrier(current)) {
+						throw new InterruptedException();
+					}
+					interrupted = true; // Too late to break the phase, it is already over
+				}
+				else {
+					LockSupport.park(this);
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (current.state.get() == BROKEN) {
+			throw new BrokenBarrierException();
+		}
+	}
+
+	// The breaking party has not arrived, so the current phase cannot be released without it. The phase read may
+	// only just have been released, in which case the one after it is the current one
+	@Override
+	public void breakBarrier() {
+		Phase current = phase;
+		while (!breakBarrier(current) && current.state.get() == RELEASED) {
+			current = current.next;
+		}
+	}
+
+	// Breaks the phase unless it has already been released, in the same step that would release it. Broken phases
+	// are never replaced, so every later await fails too
+	private static boolean breakBarrier(Phase current) {
+		boolean broke = current.state.compareAndSet(WAITING, BROKEN);
+		current.unparkAll();
+		return broke;
+	}
+
+	// Each phase keeps its own waiting threads, so a late wake-up from one phase never uses up the next one's.
+	// A phase ends exactly once, released or broken, by a compare and set of its state
+	private static class Phase {
+		final ConcurrentLinkedQueue<Thread> parked = new ConcurrentLinkedQueue<Thread>(); // Threads that may be parked
+		final AtomicInteger state = new AtomicInteger(WAITING);
+		volatile Phase next; // Set before the phase is released
+
+		void unparkAll() {
+			Thread thread;
+			while ((thread = parked.poll()) != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+}
@@ -5,4 +5,24 @@ import java.util.List;
 public interface SwarmOptimization {
 	public List<Double> optimize();
 	public List<Double> optimize(int delay);
+	
+	// The value of the best position found so far, as cached when it was evaluated
+	public double getBestValue();
+	
+	// A copy of the best position found so far. Safe to call from any thread while the run is in progress
+	public List<Double> getBestPosition();
+	
+	// Ends the run early, after the iteration in progress, and optimize() returns the best position found so far.
+	// Safe to call from any thread, at any time. Interrupting the thread running optimize() does the same
+	public void stop();
+	
+	// Stops the run once System.nanoTime() passes deadline, checked between iterations
+	public void setDeadline(long deadline);
+	
+	// Number of times this run has called the function. Every particle is evaluated exactly once when it is
+	// created and once per move, so a finished run reports numParticles * (numIterations + 1).
+	public long getEvaluationCount();
+	
+	// Register before optimizing. Listeners are called after each iteration is logged, see IterationListener
+	public void addIterationListener(IterationListener listener);
 }
@@ -1,12 +1,15 @@
 package swarm.pso.service.unused;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import swarm.pso.logging.Logging;
+import swarm.pso.service.IterationListener;
 import swarm.pso.service.SwarmOptimization;
 import swarm.pso.structures.Particle;
 import swarm.pso.structures.ParticleWrapper;
@@ -25,6 +28,8 @@ public class WrapperOptimization implements SwarmOptimization {
 	private final Random rand;
 	
 	private final Logging log;
+	
+	private final AtomicLong evaluations = new AtomicLong(); // Number of times the function has been called
 
     //private int iteration;
     //private int particleNumber;
@@ -48,7 +53,7 @@ public class WrapperOptimization implements SwarmOptimization {
 		for (int p = 0; p < config.getNumParticles(); p++) {
 			List<Double> initialPosition = initialPosition();
 			
-			double initialValue = config.function(initialPosition);
+			double initialValue = evaluate(initialPosition);
 			
 			List<Double> initialVelocity = initialVelocity();
 			
@@ -156,7 +161,7 @@ public class WrapperOptimization implements SwarmOptimization {
 			
 		}
 		updateInertia(iteration+1);
-		log.addBestPosition(iteration, bestPosition);
+		log.addBestPosition(iteration, bestPosition, bestValue);
 		log.addTime(iteration, System.nanoTime());
 	}
 	
@@ -168,25 +173,61 @@ public class WrapperOptimization implements SwarmOptimization {
 	private void updateParticle(int iteration, int particle, double inertia) {
 		List<Double> velocity = calculateVelocity(particle, inertia);
 		List<Double> position = calculatePosition(particle, velocity);
-		List<Double> bestPosition = selectBestPosition(particle, position);
+		double value = evaluate(position);
 		
 		//System.out.println("Particle: " + position + ", " + velocity + ", " + function.function(position));
-		setParticle(particle, new Particle(position, velocity, bestPosition, config.function(position), config.function(bestPosition)));
+		setParticle(particle, selectBestPosition(particle, position, velocity, value));
 		updateGlobalBest(getParticle(particle));
 
 		log.addParticlePosition(iteration, particle, position);
 	}
 
-	private List<Double> selectBestPosition(int particle, List<Double> newPosition) {
-		List<Double> currentBestPosition = getParticle(particle).getBestPosition();
-		if (config.function(currentBestPosition) <= config.function(newPosition)) {
-			return currentBestPosition;
+	// Builds the particle's next state, reusing the cached value of its personal best instead of re-evaluating it
+	private Particle selectBestPosition(int particle, List<Double> newPosition, List<Double> newVelocity, double newValue) {
+		Particle current = getParticle(particle);
+		if (current.getBestValue() <= newValue) {
+			return new Particle(newPosition, newVelocity, current.getBestPosition(), newValue, current.getBestValue());
 		}
 		else {
-			return newPosition;
+			return new Particle(newPosition, newVelocity, newPosition, newValue, newValue);
 		}
 	}
 	
+	private double evaluate(List<Double> position) {
+		evaluations.incrementAndGet();
+		return config.function(position);
+	}
+	
+	@Override
+	public long getEvaluationCount() {
+		return evaluations.get();
+	}
+	
+	@Override
+	public void addIterationListener(IterationListener listener) {
+		throw new UnsupportedOperationException("Prototype optimizers do not report iterations");
+	}
+	
+	@Override
+	public synchronized double getBestValue() {
+		return bestValue;
+	}
+	
+	@Override
+	public synchronized List<Double> getBestPosition() {
+		return new ArrayList<Double>(bestPosition);
+	}
+	
+	@Override
+	public void stop() {
+		throw new UnsupportedOperationException("Prototype optimizers always run to the end");
+	}
+	
+	@Override
+	public void setDeadline(long deadline) {
+		throw new UnsupportedOperationException("Prototype optimizers always run to the end");
+	}
+	
 	private List<Double> calculatePosition(int particle, List<Double> velocity) {
 		List<Double> position = Arrays.asList(new Double[config.getDimensions()]);
 		List<Double> oldPosition = getParticle(particle).getPosition();
@@ -0,0 +1,37 @@
+package swarm.pso.structures;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+// A read-only List<Double> over a region of a double[], used to pass a particle's row of a SwarmState
+// to code that expects a list without copying it. The view can be pointed at a new region at any time,
+// so one instance can be reused for every evaluation a thread performs. Not thread safe.
+public class DoubleArrayView extends AbstractList<Double> implements RandomAccess {
+	private double[] array;
+	private int offset;
+	private final int length;
+
+	public DoubleArrayView(int length) {
+		this.length = length;
+	}
+
+	// Point this view at array[offset] through array[offset + size() - 1]
+	public DoubleArrayView wrap(double[] array, int offset) {
+		this.array = array;
+		this.offset = offset;
+		return this;
+	}
+
+	@Override
+	public Double get(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+		}
+		return array[offset + index];
+	}
+
+	@Override
+	public int size() {
+		return length;
+	}
+}
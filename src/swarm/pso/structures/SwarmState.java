@@ -0,0 +1,119 @@
+package swarm.pso.structures;
+
+// Holds the state of every particle in a swarm in flat primitive arrays.
+// Per-particle vectors are stored row by row, so dimension d of particle p lives at p * dimensions + d.
+// Personal bests are also kept column by column (d * numParticles + p), so a search over every particle's best in one
+// dimension reads contiguous memory.
+// Unlike Particle, this structure is mutable and is updated in place, so no objects are created per update.
+public class SwarmState {
+	private final int numParticles;
+	private final int dimensions;
+
+	private final double[] positions; // The current position of every particle
+	private final double[] velocities; // The amount by which every particle is currently moving in each dimension
+	private final double[] bestPositions; // The best position every particle has previously visited
+	private final double[] bestPositionsByDimension; // The same best positions, grouped by dimension
+
+	private final double[] values; // f(position) for every particle
+	private final double[] bestValues; // f(bestPosition) for every particle
+
+	public SwarmState(int numParticles, int dimensions) {
+		if (numParticles <= 0 || dimensions <= 0) {
+			throw new IllegalArgumentException("A swarm must have a nonzero number of particles and dimensions");
+		}
+		this.numParticles = numParticles;
+		this.dimensions = dimensions;
+
+		positions = new double[numParticles * dimensions];
+		velocities = new double[numParticles * dimensions];
+		bestPositions = new double[numParticles * dimensions];
+		bestPositionsByDimension = new double[numParticles * dimensions];
+
+		values = new double[numParticles];
+		bestValues = new double[numParticles];
+	}
+
+	public int getNumParticles() {
+		return numParticles;
+	}
+
+	public int getDimensions() {
+		return dimensions;
+	}
+
+	// Index of the first dimension of a particle in the position, velocity and best position arrays
+	public int offset(int particle) {
+		return particle * dimensions;
+	}
+
+	// The raw arrays are exposed so optimizers can run their inner loops without any indirection.
+	public double[] getPositions() {
+		return positions;
+	}
+
+	public double[] getVelocities() {
+		return velocities;
+	}
+
+	public double[] getBestPositions() {
+		return bestPositions;
+	}
+
+	// Indexed by dimension * numParticles + particle
+	public double[] getBestPositionsByDimension() {
+		return bestPositionsByDimension;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	public double[] getBestValues() {
+		return bestValues;
+	}
+
+	public double getPosition(int particle, int dimension) {
+		return positions[particle * dimensions + dimension];
+	}
+
+	public double getVelocity(int particle, int dimension) {
+		return velocities[particle * dimensions + dimension];
+	}
+
+	public double getBestPosition(int particle, int dimension) {
+		return bestPositions[particle * dimensions + dimension];
+	}
+
+	public double getValue(int particle) {
+		return values[particle];
+	}
+
+	public double getBestValue(int particle) {
+		return bestValues[particle];
+	}
+
+	// Record a particle's current position as its personal best
+	public void updateBest(int particle) {
+		int offset = particle * dimensions;
+		System.arraycopy(positions, offset, bestPositions, offset, dimensions);
+		for (int d = 0; d < dimensions; d++) {
+			bestPositionsByDimension[d * numParticles + particle] = positions[offset + d];
+		}
+		bestValues[particle] = values[particle];
+	}
+
+	// Give a particle the personal best it has in source, a swarm of the same size
+	public void copyBest(int particle, SwarmState source) {
+		int offset = particle * dimensions;
+		System.arraycopy(source.bestPositions, offset, bestPositions, offset, dimensions);
+		for (int d = 0; d < dimensions; d++) {
+			bestPositionsByDimension[d * numParticles + particle] = source.bestPositionsByDimension[d * numParticles + particle];
+		}
+		bestValues[particle] = source.bestValues[particle];
+	}
+
+	// Copy a particle's current position into dest, starting at dest[0]
+	public void copyPosition(int particle, double[] dest) {
+		System.arraycopy(positions, particle * dimensions, dest, 0, dimensions);
+	}
+}
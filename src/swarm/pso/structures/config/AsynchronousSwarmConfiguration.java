@@ -0,0 +1,34 @@
+package swarm.pso.structures.config;
+
+//Holds parameters for asynchronous PSO, where particles advance independently until an evaluation budget is spent.
+//numIterations only decides how many generations are logged, and the inertia schedule when no budget is given.
+public class AsynchronousSwarmConfiguration extends ConcurrentSwarmConfiguration {
+	private final long evaluationBudget; // Evaluations for the whole run, including the first evaluation of every particle
+	private final int maxDrift; // How many more updates a particle may have completed than the least updated particle
+								// before it has to wait. 0 for no bound
+
+	// The same number of evaluations as a synchronous run of numIterations, with no bound on drift
+	public AsynchronousSwarmConfiguration(ConcurrentSwarmConfiguration concurrentConfig) {
+		this(concurrentConfig, (long) concurrentConfig.getNumParticles() * (concurrentConfig.getNumIterations() + 1), 0);
+	}
+
+	public AsynchronousSwarmConfiguration(ConcurrentSwarmConfiguration concurrentConfig, long evaluationBudget, int maxDrift) {
+		super(concurrentConfig);
+		if (evaluationBudget < concurrentConfig.getNumParticles()) {
+			throw new IllegalArgumentException("The budget must allow every particle to be evaluated once");
+		}
+		if (maxDrift < 0) {
+			throw new IllegalArgumentException("Drift bound must be >= 0");
+		}
+		this.evaluationBudget = evaluationBudget;
+		this.maxDrift = maxDrift;
+	}
+
+	public long getEvaluationBudget() {
+		return evaluationBudget;
+	}
+
+	public int getMaxDrift() {
+		return maxDrift;
+	}
+}
@@ -2,12 +2,94 @@ package swarm.pso.structures.config;
 
 //Holds Concurrent PSO parameters
 public class ConcurrentSwarmConfiguration extends SwarmConfiguration {
+	// How threads share improvements to the global best during an iteration
+	public enum GlobalBestUpdate {
+		MERGED, // Each thread keeps its own best, the bests are merged once all threads reach the end of the iteration
+		IMMEDIATE // Improvements are published to every thread as soon as they are found, without locking
+	}
+	
+	// Where an iteration writes the particles' new state
+	public enum StateUpdate {
+		IN_PLACE, // Over the current state, which other threads may be reading
+		DOUBLE_BUFFERED // Into a second copy of the swarm, which becomes the current state once every thread is done.
+						// Threads only read state that nobody is writing, so results do not depend on thread timing
+	}
+	
+	// How particles are divided between threads
+	public enum Scheduling {
+		STATIC, // Every thread updates the same contiguous block of particles each iteration
+		WORK_STEALING // Particle ranges are split recursively on a ForkJoinPool, idle threads steal unfinished ranges
+	}
+	
+	// How statically scheduled threads wait for each other between iterations
+	public enum BarrierType {
+		CYCLIC, // A CyclicBarrier, waiting threads park at once. Cheapest when iterations take milliseconds or more
+		SPIN_THEN_PARK, // Waiting threads spin for a few microseconds before parking, for short iterations
+		TIERED_PHASER // Arrivals are counted on a tree of small Phasers, for short iterations on many threads
+	}
+	
     private final int numThreads;
+    private final GlobalBestUpdate globalBestUpdate;
+    private final StateUpdate stateUpdate;
+    private final Scheduling scheduling;
+    private final int minChunkSize; // Work stealing never splits a range of particles smaller than this
+    private final BarrierType barrierType;
 
 	public ConcurrentSwarmConfiguration(SwarmConfiguration swarmConfig, int numThreads) {
+		this(swarmConfig, numThreads, GlobalBestUpdate.MERGED);
+	}
+
+	public ConcurrentSwarmConfiguration(SwarmConfiguration swarmConfig, int numThreads, GlobalBestUpdate globalBestUpdate) {
+		this(swarmConfig, numThreads, globalBestUpdate, StateUpdate.IN_PLACE);
+	}
+
+	public ConcurrentSwarmConfiguration(SwarmConfiguration swarmConfig, int numThreads, GlobalBestUpdate globalBestUpdate,
+			StateUpdate stateUpdate) {
+		this(swarmConfig, numThreads, globalBestUpdate, stateUpdate, Scheduling.STATIC, 1, BarrierType.CYCLIC);
+	}
+
+	public ConcurrentSwarmConfiguration(ConcurrentSwarmConfiguration other) {
+		this(other, other.scheduling, other.minChunkSize);
+	}
+
+	// Copy other, but divide the particles between threads as given
+	public ConcurrentSwarmConfiguration(ConcurrentSwarmConfiguration other, Scheduling scheduling, int minChunkSize) {
+		this(other, other.numThreads, other.globalBestUpdate, other.stateUpdate, scheduling, minChunkSize,
+				other.barrierType);
+	}
+
+	// Copy other, but synchronize statically scheduled threads with the given barrier
+	public ConcurrentSwarmConfiguration(ConcurrentSwarmConfiguration other, BarrierType barrierType) {
+		this(other, other.numThreads, other.globalBestUpdate, other.stateUpdate, other.scheduling, other.minChunkSize,
+				barrierType);
+	}
+
+	private ConcurrentSwarmConfiguration(SwarmConfiguration swarmConfig, int numThreads, GlobalBestUpdate globalBestUpdate,
+			StateUpdate stateUpdate, Scheduling scheduling, int minChunkSize, BarrierType barrierType) {
 		super(swarmConfig);
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		if (minChunkSize <= 0) {
+			throw new IllegalArgumentException("Chunks must hold at least one particle");
+		}
         this.numThreads = numThreads;
+        this.globalBestUpdate = globalBestUpdate;
+        this.stateUpdate = stateUpdate;
+        this.scheduling = scheduling;
+        this.minChunkSize = minChunkSize;
+        this.barrierType = barrierType;
 	}
 
     public int getNumThreads() { return numThreads; }
+
+    public GlobalBestUpdate getGlobalBestUpdate() { return globalBestUpdate; }
+
+    public StateUpdate getStateUpdate() { return stateUpdate; }
+
+    public Scheduling getScheduling() { return scheduling; }
+
+    public int getMinChunkSize() { return minChunkSize; }
+
+    public BarrierType getBarrierType() { return barrierType; }
 }
@@ -4,12 +4,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import swarm.pso.model.DoublePSOFunction;
 import swarm.pso.model.PSOFunction;
 
 //Holds Optimization parameters
 public class FunctionConfiguration {
 	private final int dimensions;
 	private final PSOFunction<Double> function;
+	private final DoublePSOFunction primitiveFunction; // function itself, or an adapter if it only takes lists
 	private final List<Double> lowerBounds;
 	private final List<Double> upperBounds;
 	
@@ -25,6 +27,7 @@ public class FunctionConfiguration {
 		
 		this.dimensions = dimensions;
 		this.function = function;
+		this.primitiveFunction = DoublePSOFunction.wrap(function);
 		this.lowerBounds = Collections.unmodifiableList(new ArrayList<Double>(lowerBounds));
 		this.upperBounds = Collections.unmodifiableList(new ArrayList<Double>(upperBounds));
 	}
@@ -53,6 +56,16 @@ public class FunctionConfiguration {
 		return function.function(args);
 	}
 
+	// Evaluates the function on args[offset] through args[offset + dimensions - 1] without boxing
+	public final double function(double[] args, int offset) {
+		return primitiveFunction.function(args, offset);
+	}
+
+	// Evaluates count consecutive points starting at args[offset], writing their values from results[resultOffset]
+	public final void function(double[] args, int offset, int count, double[] results, int resultOffset) {
+		primitiveFunction.function(args, offset, count, results, resultOffset);
+	}
+
 	public Double getSolution() {
 		return function.getSolution();
 	}
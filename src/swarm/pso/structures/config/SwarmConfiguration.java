@@ -6,6 +6,13 @@ import java.util.List;
 
 //Holds PSO parameters
 public class SwarmConfiguration extends FunctionConfiguration {
+	// How the particle with the best fitness-distance ratio is searched for
+	public enum FdrStrategy {
+		EXACT, // Compare against every other particle, quadratic in the number of particles
+		SAMPLED, // Compare against fdrCandidates particles drawn at random for every update
+		NEIGHBOURHOOD // Compare against the fdrCandidates nearest bests in each dimension and the fdrCandidates fittest
+	}
+	
 	private final double inertia;
 	private final double minInertia;
 	private final double selfWeight;
@@ -17,11 +24,58 @@ public class SwarmConfiguration extends FunctionConfiguration {
 
 	private final List<Double> maximumVelocity;
 	
+	private final int evaluationBatchSize; // 0 evaluates each particle as it moves, otherwise the largest batch of
+											// moved particles passed to the function at once
+	
+	private final FdrStrategy fdrStrategy;
+	private final int fdrCandidates; // Bound on the particles an approximate FDR strategy compares against
+	
 	public SwarmConfiguration(double inertia, double minInertia, double selfWeight, double bestWeight, 
 			double fdrWeight, int numParticles, int numIterations, List<Double> maximumVelocity,
 			FunctionConfiguration functionConf) {
+		this(inertia, minInertia, selfWeight, bestWeight, fdrWeight, numParticles, numIterations, maximumVelocity,
+				0, FdrStrategy.EXACT, 0, functionConf);
+	}
+	
+	public SwarmConfiguration(SwarmConfiguration other) {
+		this(other, other.evaluationBatchSize);
+	}
+	
+	// Copies other, but moves every particle of an iteration before evaluating the new positions in batches
+	// of at most evaluationBatchSize. Use 0 to evaluate each particle as soon as it moves.
+	public SwarmConfiguration(SwarmConfiguration other, int evaluationBatchSize) {
+		this(other.inertia, other.minInertia, other.selfWeight, other.bestWeight, other.fdrWeight, 
+				other.numParticles, other.numIterations, other.maximumVelocity, evaluationBatchSize,
+				other.fdrStrategy, other.fdrCandidates, other);
+	}
+	
+	// Copies other, but searches for FDR particles with the given strategy. Approximate strategies only compare
+	// against a bounded number of candidates, so their cost grows roughly linearly with the number of particles.
+	public SwarmConfiguration(SwarmConfiguration other, FdrStrategy fdrStrategy, int fdrCandidates) {
+		this(other.inertia, other.minInertia, other.selfWeight, other.bestWeight, other.fdrWeight, 
+				other.numParticles, other.numIterations, other.maximumVelocity, other.evaluationBatchSize,
+				fdrStrategy, fdrCandidates, other);
+	}
+	
+	// Copies other, but with a different swarm size and run length
+	public SwarmConfiguration(SwarmConfiguration other, int numParticles, int numIterations) {
+		this(other.inertia, other.minInertia, other.selfWeight, other.bestWeight, other.fdrWeight, 
+				numParticles, numIterations, other.maximumVelocity, other.evaluationBatchSize,
+				other.fdrStrategy, other.fdrCandidates, other);
+	}
+	
+	private SwarmConfiguration(double inertia, double minInertia, double selfWeight, double bestWeight, 
+			double fdrWeight, int numParticles, int numIterations, List<Double> maximumVelocity,
+			int evaluationBatchSize, FdrStrategy fdrStrategy, int fdrCandidates, FunctionConfiguration functionConf) {
 		super(functionConf);
 		
+		if (evaluationBatchSize < 0) {
+			throw new IllegalArgumentException("Evaluation batch size must be >= 0");
+		}
+		if (fdrStrategy != FdrStrategy.EXACT && fdrCandidates <= 0) {
+			throw new IllegalArgumentException("Approximate FDR strategies need fdrCandidates > 0");
+		}
+		
 		this.inertia = inertia;
 		this.minInertia = minInertia;
 		this.selfWeight = selfWeight;
@@ -32,11 +86,11 @@ public class SwarmConfiguration extends FunctionConfiguration {
 		this.numIterations = numIterations;
 		
 		this.maximumVelocity = Collections.unmodifiableList(new ArrayList<Double>(maximumVelocity));
-	}
-	
-	public SwarmConfiguration(SwarmConfiguration other) {
-		this(other.inertia, other.minInertia, other.selfWeight, other.bestWeight, other.fdrWeight, 
-				other.numParticles, other.numIterations, other.maximumVelocity, other);
+		
+		this.evaluationBatchSize = evaluationBatchSize;
+		
+		this.fdrStrategy = fdrStrategy;
+		this.fdrCandidates = fdrCandidates;
 	}
 
 	public final double getInertia() {
@@ -70,4 +124,16 @@ public class SwarmConfiguration extends FunctionConfiguration {
 	public final List<Double> getMaximumVelocity() {
 		return maximumVelocity;
 	}
+
+	public final int getEvaluationBatchSize() {
+		return evaluationBatchSize;
+	}
+
+	public final FdrStrategy getFdrStrategy() {
+		return fdrStrategy;
+	}
+
+	public final int getFdrCandidates() {
+		return fdrCandidates;
+	}
 }
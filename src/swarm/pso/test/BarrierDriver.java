@@ -0,0 +1,108 @@
+package swarm.pso.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.BarrierType;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Times the parallel optimizer with each barrier against the sequential optimizer as the swarm grows, to find where
+//parallel runs start paying for their synchronization. Smaller swarms mean shorter iterations, so the cost of the
+//barrier itself decides the result.
+public class BarrierDriver {
+	public static final int DIMENSIONS = 10;
+
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+
+	public static final int[] NUMBER_PARTICLES = { 8, 16, 32, 64, 128, 256, 512 };
+	public static final int NUMBER_ITERATIONS = 200;
+	public static final int REPEATS = 5; // The fastest of this many runs is reported
+
+	public static final long SEED = 7100555322108534535L;
+
+	// Arguments, all optional: threads (default one per processor), iterations
+	public static void main(String[] args) {
+		int numThreads = args.length >= 1 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int numIterations = args.length >= 2 ? Integer.parseInt(args[1]) : NUMBER_ITERATIONS;
+
+		PSOFunction<Double> function = new Functions.Sphere(DIMENSIONS);
+		BarrierType[] types = BarrierType.values();
+
+		System.out.println(numThreads + " threads on " + Runtime.getRuntime().availableProcessors() +
+				" processors, " + numIterations + " iterations, microseconds per iteration");
+		StringBuilder header = new StringBuilder(String.format("%10s %12s", "particles", "sequential"));
+		for (BarrierType type : types) {
+			header.append(String.format(" %16s", type));
+		}
+		header.append("  fastest barrier");
+		System.out.println(header);
+
+		int[] crossover = new int[types.length]; // Smallest swarm each barrier beat the sequential optimizer on, 0 if none
+		for (int numParticles : NUMBER_PARTICLES) {
+			SwarmConfiguration conf = configure(function, numParticles, numIterations);
+			double sequential = time(conf, null);
+			StringBuilder row = new StringBuilder(String.format("%10d %12.1f", numParticles, sequential));
+			int fastest = 0;
+			double fastestTime = Double.MAX_VALUE;
+			for (int b = 0; b < types.length; b++) {
+				ConcurrentSwarmConfiguration concurrent = new ConcurrentSwarmConfiguration(
+						new ConcurrentSwarmConfiguration(conf, Math.min(numThreads, numParticles)), types[b]);
+				double parallel = time(conf, concurrent);
+				row.append(String.format(" %16.1f", parallel));
+				if (parallel < sequential && crossover[b] == 0) {
+					crossover[b] = numParticles;
+				}
+				if (parallel < fastestTime) {
+					fastest = b;
+					fastestTime = parallel;
+				}
+			}
+			row.append("  ").append(types[fastest]);
+			System.out.println(row);
+		}
+
+		for (int b = 0; b < types.length; b++) {
+			System.out.println(types[b] + (crossover[b] == 0 ? " never beat the sequential optimizer"
+					: " beats the sequential optimizer from " + crossover[b] + " particles"));
+		}
+	}
+
+	private static SwarmConfiguration configure(PSOFunction<Double> function, int numParticles, int numIterations) {
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		return new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT, FDR_WEIGHT,
+				numParticles, numIterations, maximumVelocity, funcConf);
+	}
+
+	// Fastest time per iteration in microseconds, of the sequential optimizer when concurrent is null
+	private static double time(SwarmConfiguration conf, ConcurrentSwarmConfiguration concurrent) {
+		long fastest = Long.MAX_VALUE;
+		for (int r = 0; r < REPEATS; r++) {
+			long start = System.nanoTime();
+			if (concurrent == null) {
+				new SequentialOptimization(conf, new Random(SEED), new Logging(conf)).optimize();
+			}
+			else {
+				new ParticleParallelOptimization(concurrent, new Random(SEED), new Logging(conf)).optimize();
+			}
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		return fastest / 1e3 / conf.getNumIterations();
+	}
+}
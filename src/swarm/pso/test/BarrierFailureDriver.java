@@ -0,0 +1,92 @@
+package swarm.pso.test;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import swarm.pso.service.IterationBarrier;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration.BarrierType;
+
+//Checks that every barrier behaves like CyclicBarrier when its action throws: the thread that ran the action gets
+//the exception and every other thread gets a BrokenBarrierException instead of waiting forever. Then the same when
+//a party fails and breaks the barrier instead of arriving. Runs each barrier with a single phaser and with a tree
+//of them, and exits with status 1 if any check fails.
+public class BarrierFailureDriver {
+	public static final int[] PARTIES = { 2, 20 }; // 20 is more than one phaser group
+	public static final int FAILING_PHASE = 3; // The action throws the time it runs for this phase, or the failing
+												// party breaks the barrier instead of arriving at it
+	public static final long TIMEOUT = 5000; // Milliseconds to wait for every thread to give up
+
+	public static void main(String[] args) throws InterruptedException {
+		boolean passed = true;
+		for (BarrierType type : BarrierType.values()) {
+			for (int parties : PARTIES) {
+				passed &= check(type, parties, false);
+				passed &= check(type, parties, true);
+			}
+		}
+		System.out.println(passed ? "All barriers broke cleanly" : "Some barriers did not break cleanly");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	// With partyFails, the last party breaks the barrier in place of its arrival and the action never throws
+	private static boolean check(BarrierType type, final int parties, final boolean partyFails)
+			throws InterruptedException {
+		final AtomicInteger phase = new AtomicInteger();
+		final IterationBarrier barrier = IterationBarrier.create(type, parties, new Runnable() {
+			@Override
+			public void run() {
+				if (phase.incrementAndGet() == FAILING_PHASE && !partyFails) {
+					throw new IllegalStateException("Action failed");
+				}
+			}
+		});
+
+		final AtomicInteger thrown = new AtomicInteger(); // Threads that got the action's exception
+		final AtomicInteger broken = new AtomicInteger(); // Threads that got a BrokenBarrierException
+		final AtomicInteger other = new AtomicInteger(); // Threads that got anything else or finished normally
+		Thread[] threads = new Thread[parties];
+		for (int p = 0; p < parties; p++) {
+			final int party = p;
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < FAILING_PHASE + 1; i++) {
+							if (partyFails && party == parties - 1 && i == FAILING_PHASE - 1) {
+								barrier.breakBarrier();
+								throw new IllegalStateException("Party failed");
+							}
+							barrier.await(party);
+						}
+						other.incrementAndGet();
+					} catch (IllegalStateException e) {
+						thrown.incrementAndGet();
+					} catch (BrokenBarrierException e) {
+						broken.incrementAndGet();
+					} catch (Throwable e) {
+						other.incrementAndGet();
+					}
+				}
+			};
+			threads[p].setDaemon(true); // A hung thread must not keep the driver alive
+			threads[p].start();
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+		boolean finished = true;
+		for (Thread thread : threads) {
+			long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			thread.join(Math.max(1, left));
+			finished &= !thread.isAlive();
+		}
+
+		boolean passed = finished && thrown.get() == 1 && broken.get() == parties - 1 && other.get() == 0;
+		System.out.println(String.format("%-16s %3d parties, %-6s failing: %s, %d threw, %d broken, %d other", type,
+				parties, partyFails ? "party" : "action", passed ? "ok" : finished ? "FAILED" : "FAILED (threads still waiting)",
+				thrown.get(), broken.get(), other.get()));
+		return passed;
+	}
+}
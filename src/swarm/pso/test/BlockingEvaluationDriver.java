@@ -0,0 +1,109 @@
+package swarm.pso.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.DoublePSOFunction;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.model.ThreadedPSOFunction;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Times a sequential run of a function that blocks on every evaluation, as a function waiting on I/O would,
+//with each batch evaluated on the calling thread and with a ThreadedPSOFunction.
+public class BlockingEvaluationDriver {
+	public static final int DIMENSIONS = 10;
+
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+
+	public static final int NUMBER_PARTICLES = 1000;
+	public static final int NUMBER_ITERATIONS = 10;
+	public static final int BLOCKING_MILLIS = 5;
+	public static final int MAX_CONCURRENCY = 1000;
+
+	public static final long SEED = 7100555322108534535L;
+
+	// Arguments, all optional: particles, iterations, milliseconds blocked per evaluation, concurrency limit
+	public static void main(String[] args) {
+		int numParticles = args.length >= 1 ? Integer.parseInt(args[0]) : NUMBER_PARTICLES;
+		int numIterations = args.length >= 2 ? Integer.parseInt(args[1]) : NUMBER_ITERATIONS;
+		int blockingMillis = args.length >= 3 ? Integer.parseInt(args[2]) : BLOCKING_MILLIS;
+		int maxConcurrency = args.length >= 4 ? Integer.parseInt(args[3]) : MAX_CONCURRENCY;
+
+		PSOFunction<Double> function = new Blocking(new Functions.Sphere(DIMENSIONS), blockingMillis);
+		ThreadedPSOFunction threaded = new ThreadedPSOFunction(function, maxConcurrency);
+
+		System.out.println(numParticles + " particles, " + numIterations + " iterations, " + blockingMillis +
+				" ms per evaluation, " + (threaded.isVirtual() ? "virtual" : "platform") + " threads");
+		run("calling thread", function, numParticles, numIterations);
+		run("threaded", threaded, numParticles, numIterations);
+		threaded.close();
+	}
+
+	private static void run(String name, PSOFunction<Double> function, int numParticles, int numIterations) {
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		SwarmConfiguration conf = new SwarmConfiguration(new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA,
+				SELF_WEIGHT, BEST_WEIGHT, FDR_WEIGHT, numParticles, numIterations, maximumVelocity, funcConf),
+				numParticles); // Hand every iteration's evaluations over as one batch
+
+		long start = System.nanoTime();
+		SequentialOptimization pso = new SequentialOptimization(conf, new Random(SEED), new Logging(conf));
+		pso.optimize();
+		System.out.println(String.format("%-16s %10.1f ms, best %g", name, (System.nanoTime() - start) / 1e6,
+				pso.getBestValue()));
+	}
+
+	// Sleeps before every evaluation of the wrapped function
+	private static class Blocking extends DoublePSOFunction {
+		private final DoublePSOFunction function;
+		private final int millis;
+
+		Blocking(PSOFunction<Double> function, int millis) {
+			this.function = DoublePSOFunction.wrap(function);
+			this.millis = millis;
+		}
+
+		@Override
+		public double function(double[] arguments, int offset) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return function.function(arguments, offset);
+		}
+
+		@Override
+		public int getDimensions() {
+			return function.getDimensions();
+		}
+
+		@Override
+		public Double getSolution() {
+			return function.getSolution();
+		}
+
+		@Override
+		public List<Double> getLowerBounds() {
+			return function.getLowerBounds();
+		}
+
+		@Override
+		public List<Double> getUpperBounds() {
+			return function.getUpperBounds();
+		}
+	}
+}
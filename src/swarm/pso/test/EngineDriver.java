@@ -0,0 +1,98 @@
+package swarm.pso.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.service.OptimizationEngine;
+import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Runs many parallel optimizations at once, first each on threads of its own, then all on one OptimizationEngine,
+//and reports the time taken and the most threads the JVM had alive.
+public class EngineDriver {
+	public static final int DIMENSIONS = 10;
+
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+
+	public static final int NUMBER_RUNS = 200;
+	public static final int NUMBER_PARTICLES = 40;
+	public static final int NUMBER_ITERATIONS = 100;
+	public static final int THREADS_PER_RUN = 4;
+
+	public static final long SEED = 7100555322108534535L;
+
+	// Arguments, all optional: runs, engine threads (default one per processor)
+	public static void main(String[] args) throws InterruptedException {
+		int numRuns = args.length >= 1 ? Integer.parseInt(args[0]) : NUMBER_RUNS;
+		int engineThreads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		PSOFunction<Double> function = new Functions.Sphere(DIMENSIONS);
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		SwarmConfiguration swarmConf = new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT,
+				FDR_WEIGHT, NUMBER_PARTICLES, NUMBER_ITERATIONS, maximumVelocity, funcConf);
+		ConcurrentSwarmConfiguration conf = new ConcurrentSwarmConfiguration(swarmConf, THREADS_PER_RUN);
+
+		System.out.println(numRuns + " runs of " + THREADS_PER_RUN + " threads each, " + engineThreads +
+				" engine threads on " + Runtime.getRuntime().availableProcessors() + " processors");
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		threads.resetPeakThreadCount();
+		long start = System.nanoTime();
+		List<Thread> runners = new ArrayList<Thread>();
+		for (int r = 0; r < numRuns; r++) {
+			final ParticleParallelOptimization pso = create(conf, r);
+			Thread runner = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					pso.optimize();
+				}
+			});
+			runner.start();
+			runners.add(runner);
+		}
+		for (Thread runner : runners) {
+			runner.join();
+		}
+		report("own threads", start, threads.getPeakThreadCount());
+
+		threads.resetPeakThreadCount();
+		start = System.nanoTime();
+		OptimizationEngine engine = new OptimizationEngine(engineThreads);
+		List<OptimizationEngine.Run> runs = new ArrayList<OptimizationEngine.Run>();
+		for (int r = 0; r < numRuns; r++) {
+			runs.add(engine.submit(create(conf, r)));
+		}
+		for (OptimizationEngine.Run run : runs) {
+			run.await();
+		}
+		engine.close();
+		report("engine", start, threads.getPeakThreadCount());
+	}
+
+	private static ParticleParallelOptimization create(ConcurrentSwarmConfiguration conf, int run) {
+		return new ParticleParallelOptimization(conf, new Random(SEED + run), new Logging(conf));
+	}
+
+	private static void report(String name, long start, int peakThreads) {
+		System.out.println(String.format("%-12s %10.1f ms, peak %d threads", name, (System.nanoTime() - start) / 1e6,
+				peakThreads));
+	}
+}
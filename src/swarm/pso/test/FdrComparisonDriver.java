@@ -0,0 +1,87 @@
+package swarm.pso.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration.FdrStrategy;
+
+//Compares the convergence and run time of exact FDR against the approximate FDR strategies on the bundled functions.
+//Every strategy is run from the same seeds, and the mean and worst final error over all runs are printed.
+public class FdrComparisonDriver {
+	public static final int DIMENSIONS = 10;
+
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+
+	public static final int NUMBER_PARTICLES = 500;
+	public static final int NUMBER_ITERATIONS = 200;
+	public static final int NUMBER_RUNS = 5;
+	public static final int FDR_CANDIDATES = 16;
+
+	public static final long SEED = 7100555322108534535L;
+
+	// Arguments, all optional: particles, iterations, runs, candidates, dimensions
+	public static void main(String[] args) {
+		int numParticles = args.length >= 1 ? Integer.parseInt(args[0]) : NUMBER_PARTICLES;
+		int numIterations = args.length >= 2 ? Integer.parseInt(args[1]) : NUMBER_ITERATIONS;
+		int numRuns = args.length >= 3 ? Integer.parseInt(args[2]) : NUMBER_RUNS;
+		int candidates = args.length >= 4 ? Integer.parseInt(args[3]) : FDR_CANDIDATES;
+		int dimensions = args.length >= 5 ? Integer.parseInt(args[4]) : DIMENSIONS;
+
+		List<PSOFunction<Double>> functions = Arrays.<PSOFunction<Double>>asList(new Functions.Sphere(dimensions),
+				new Functions.Ackley(dimensions), new Functions.Rosenbrock(dimensions), new Functions.TableFunc());
+
+		System.out.println(numParticles + " particles, " + numIterations + " iterations, " + numRuns + " runs, " +
+				candidates + " candidates");
+		System.out.println(String.format("%-12s %-14s %14s %14s %12s", "function", "strategy", "mean error", "worst error", "mean ms"));
+		for (PSOFunction<Double> function : functions) {
+			SwarmConfiguration swarmConf = swarmConfiguration(function, numParticles, numIterations);
+			for (FdrStrategy strategy : FdrStrategy.values()) {
+				SwarmConfiguration conf = new SwarmConfiguration(swarmConf, strategy,
+						strategy == FdrStrategy.EXACT ? 0 : candidates);
+
+				Random seeds = new Random(SEED); // Same seeds for every strategy
+				double totalError = 0;
+				double worstError = 0;
+				long totalTime = 0;
+				for (int run = 0; run < numRuns; run++) {
+					long start = System.nanoTime();
+					SequentialOptimization pso = new SequentialOptimization(conf, new Random(seeds.nextLong()), new Logging(conf));
+					pso.optimize();
+					totalTime += System.nanoTime() - start;
+
+					double error = pso.getBestValue() - function.getSolution();
+					totalError += error;
+					worstError = Math.max(worstError, error);
+				}
+				System.out.println(String.format("%-12s %-14s %14.6g %14.6g %12.1f", function.getClass().getSimpleName(),
+						strategy, totalError / numRuns, worstError, totalTime / 1e6 / numRuns));
+			}
+		}
+	}
+
+	private static SwarmConfiguration swarmConfiguration(PSOFunction<Double> function, int numParticles, int numIterations) {
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+
+		// Set up max velocity for function as the max distance across the domain
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+
+		return new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT,
+				FDR_WEIGHT, numParticles, numIterations, maximumVelocity, funcConf);
+	}
+}
@@ -3,13 +3,13 @@ package swarm.pso.test;
 import java.util.Arrays;
 import java.util.List;
 
-import swarm.pso.model.PSOFunction;
+import swarm.pso.model.DoublePSOFunction;
 
-//Contains classes that extend PSOFunction<Double> for testing purposes
+//Contains classes that extend DoublePSOFunction for testing purposes
 public class Functions {
 	// Sphere is a sample PSOFunction for testing purposes. It represents a sum-of-squares function with arbitrary dimensions.
 	// For example, a new Sphere(3) represents the function f = x^2 + y^2 + z^2.
-	public static class Sphere extends PSOFunction<Double> {
+	public static class Sphere extends DoublePSOFunction {
 		// Dimensions is the number of arguments in the function
 		public final int dimensions;
 		public final double MINIMUM = 0;
@@ -38,16 +38,12 @@ public class Functions {
 			return bounds;
 		}
 		
-		// function is the function that accepts the list of numbers and returns the sum of their squares
+		// function is the function that accepts the array of numbers and returns the sum of their squares
 		@Override
-		public Double function(List<Double> arguments) {
-			if (arguments.size() != getDimensions()) {
-				throw new IllegalArgumentException("Expected " + dimensions + " doubles");
-			}
-			
+		public double function(double[] arguments, int offset) {
 			double sum = 0;
 			for (int i = 0; i < dimensions; i++) {
-				sum += Math.pow(arguments.get(i), 2);
+				sum += Math.pow(arguments[offset + i], 2);
 			}
 			return sum;
 		}
@@ -64,18 +60,21 @@ public class Functions {
 		
 	}
 	
-	public static class TableFunc extends PSOFunction<Double> {
+	public static class TableFunc extends DoublePSOFunction {
 		public static final int DIMENSIONS = 2;
 		public static final double MINIMUM = -19.2085;
 		private final double lowerBound = -10.0;
 		private final double upperBound = 10.0;
 		
-		public Double function(List<Double> arguments) {
+		@Override
+		public double function(double[] arguments, int offset) {
+			double x = arguments[offset];
+			double y = arguments[offset + 1];
 			return - (Math.abs(
-					Math.sin(arguments.get(0)) * Math.cos(arguments.get(1))
+					Math.sin(x) * Math.cos(y)
 					* Math.exp(Math.abs(
-							1 - (Math.sqrt(Math.pow(arguments.get(0), 2)
-							+ Math.pow(arguments.get(1), 2)))/Math.PI))));
+							1 - (Math.sqrt(Math.pow(x, 2)
+							+ Math.pow(y, 2)))/Math.PI))));
 		}
 		
 		@Override
@@ -107,7 +106,7 @@ public class Functions {
 		}
 	}
 	
-	public static class Ackley extends PSOFunction<Double> {
+	public static class Ackley extends DoublePSOFunction {
 		// Dimensions is the number of arguments in the function
 		public final int dimensions;
 		public static final double MINIMUM = 0;
@@ -120,13 +119,13 @@ public class Functions {
 		
 		// function is an Ackley function adapted from Wikipedia article en.wikipedia.org/wiki/Test_functions_for_optimization
 		@Override
-		public Double function(List<Double> arguments) {
+		public double function(double[] arguments, int offset) {
 			double sum1=0;
 			double sum2=0;
 
 			for (int i = 0; i < dimensions; i++) {
-			    sum1 += Math.pow(arguments.get(i), 2);
-			    sum2 += Math.cos(2*Math.PI*arguments.get(i));
+			    sum1 += Math.pow(arguments[offset + i], 2);
+			    sum2 += Math.cos(2*Math.PI*arguments[offset + i]);
 			}
 			return 20 + Math.E - 20 * Math.exp(-0.2 * Math.sqrt(sum1/dimensions)) - Math.exp(sum2/dimensions);
 		}
@@ -160,7 +159,7 @@ public class Functions {
 		}
 	}
 	
-	public static class Rosenbrock extends PSOFunction<Double> {
+	public static class Rosenbrock extends DoublePSOFunction {
 		// Dimensions is the number of arguments in the function
 		public final int dimensions;
 		public static final double MINIMUM = 0;
@@ -173,11 +172,11 @@ public class Functions {
 		
 		// function is a Rosenbrock function adapted from Wikipedia article en.wikipedia.org/wiki/Test_functions_for_optimization
 		@Override
-		public Double function(List<Double> arguments) {
+		public double function(double[] arguments, int offset) {
 			double sum=0;
 
-			for (int i = 0; i < dimensions - 1; i++) {
-			    sum += 100 * Math.pow((arguments.get(i+1)-Math.pow(arguments.get(i), 2)),2) + Math.pow(arguments.get(i)-1, 2);
+			for (int i = offset; i < offset + dimensions - 1; i++) {
+			    sum += 100 * Math.pow((arguments[i+1]-Math.pow(arguments[i], 2)),2) + Math.pow(arguments[i]-1, 2);
 			}
 			return sum;
 		}
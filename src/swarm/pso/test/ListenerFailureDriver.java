@@ -0,0 +1,188 @@
+package swarm.pso.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import swarm.pso.logging.Logging;
+import swarm.pso.model.PSOFunction;
+import swarm.pso.service.AsynchronousOptimization;
+import swarm.pso.service.IterationPublisher;
+import swarm.pso.service.IterationSnapshot;
+import swarm.pso.service.OptimizationEngine;
+import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.service.ReactiveStreams;
+import swarm.pso.service.SequentialOptimization;
+import swarm.pso.service.SwarmOptimization;
+import swarm.pso.structures.config.AsynchronousSwarmConfiguration;
+import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
+import swarm.pso.structures.config.FunctionConfiguration;
+import swarm.pso.structures.config.SwarmConfiguration;
+
+//Checks that a run's listeners always hear how it ended. Each optimizer runs on its own and on an
+//OptimizationEngine, with an objective that throws partway through and with one that does not, and a subscriber to
+//its IterationPublisher must get onError with the objective's exception, or onComplete. Exits with status 1 if any
+//check fails.
+public class ListenerFailureDriver {
+	public static final int DIMENSIONS = 10;
+
+	public static final double INITIAL_INERTIA = 0.9;
+	public static final double FINAL_INERTIA = 0.4;
+	public static final double SELF_WEIGHT = 1;
+	public static final double BEST_WEIGHT = 1;
+	public static final double FDR_WEIGHT = 2;
+
+	public static final int NUMBER_PARTICLES = 40;
+	public static final int NUMBER_ITERATIONS = 50;
+	public static final int NUMBER_THREADS = 4;
+	public static final int FAILING_EVALUATION = 500; // The failing objective throws on this evaluation
+	public static final long TIMEOUT = 5000; // Milliseconds to wait for the subscriber to hear the run ended
+
+	public static final String[] OPTIMIZERS = { "sequential", "particle-parallel", "asynchronous" };
+
+	public static final long SEED = 7100555322108534535L;
+
+	public static void main(String[] args) throws InterruptedException {
+		OptimizationEngine engine = new OptimizationEngine(2);
+		boolean passed = true;
+		for (String optimizer : OPTIMIZERS) {
+			for (boolean onEngine : new boolean[] { false, true }) {
+				for (boolean failing : new boolean[] { false, true }) {
+					passed &= check(optimizer, onEngine ? engine : null, failing);
+				}
+			}
+		}
+		engine.close();
+		System.out.println(passed ? "Every listener heard how its run ended" : "Some listeners were left waiting");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	// Runs the optimizer on engine, or on a thread of its own if engine is null
+	private static boolean check(String optimizer, final OptimizationEngine engine, boolean failing)
+			throws InterruptedException {
+		PSOFunction<Double> function = new FailingSphere(DIMENSIONS, failing ? FAILING_EVALUATION : 0);
+		SwarmConfiguration conf = configure(function);
+		Logging log = new Logging(conf);
+		final SwarmOptimization optimization = create(optimizer, conf, log);
+		IterationPublisher publisher = new IterationPublisher(log);
+		optimization.addIterationListener(publisher);
+
+		final AtomicReference<String> heard = new AtomicReference<String>();
+		final CountDownLatch ended = new CountDownLatch(1);
+		publisher.subscribe(new ReactiveStreams.Subscriber<IterationSnapshot>() {
+			@Override
+			public void onSubscribe(ReactiveStreams.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(IterationSnapshot item) {
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				heard.set("onError: " + throwable.getMessage());
+				ended.countDown();
+			}
+
+			@Override
+			public void onComplete() {
+				heard.set("onComplete");
+				ended.countDown();
+			}
+		});
+
+		final AtomicReference<String> outcome = new AtomicReference<String>();
+		Thread runner = new Thread() {
+			@Override
+			public void run() {
+				try {
+					if (engine != null) {
+						engine.submit(optimization).await();
+					}
+					else {
+						optimization.optimize();
+					}
+					outcome.set("returned");
+				} catch (RuntimeException e) {
+					outcome.set("threw: " + e.getMessage());
+				} catch (InterruptedException e) {
+					outcome.set("interrupted");
+				}
+			}
+		};
+		runner.setDaemon(true); // A run that never ends must not keep the driver alive
+		runner.start();
+		boolean heardEnd = ended.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		runner.join(TIMEOUT);
+
+		String expectedSignal = failing ? "onError: " + FailingSphere.MESSAGE : "onComplete";
+		String expectedOutcome = failing ? "threw: " + FailingSphere.MESSAGE : "returned";
+		boolean passed = heardEnd && expectedSignal.equals(heard.get()) && expectedOutcome.equals(outcome.get());
+		System.out.println(String.format("%-18s %-12s %-9s: %s, subscriber got %s, run %s", optimizer,
+				engine != null ? "on engine" : "on its own", failing ? "failing" : "clean", passed ? "ok" : "FAILED",
+				heardEnd ? heard.get() : "nothing", outcome.get() != null ? outcome.get() : "still running"));
+		return passed;
+	}
+
+	private static SwarmOptimization create(String optimizer, SwarmConfiguration conf, Logging log) {
+		Random rand = new Random(SEED);
+		ConcurrentSwarmConfiguration concurrent = new ConcurrentSwarmConfiguration(conf, NUMBER_THREADS);
+		if (optimizer.equals("particle-parallel")) {
+			return new ParticleParallelOptimization(concurrent, rand, log);
+		}
+		else if (optimizer.equals("asynchronous")) {
+			return new AsynchronousOptimization(new AsynchronousSwarmConfiguration(concurrent), rand, log);
+		}
+		return new SequentialOptimization(conf, rand, log);
+	}
+
+	private static SwarmConfiguration configure(PSOFunction<Double> function) {
+		List<Double> maximumVelocity = Arrays.asList(new Double[function.getDimensions()]);
+		for (int i = 0; i < function.getDimensions(); i++) {
+			maximumVelocity.set(i,
+					Math.abs(function.getUpperBounds().get(i)-function.getLowerBounds().get(i)));
+		}
+		FunctionConfiguration funcConf = new FunctionConfiguration(function.getDimensions(), function,
+				function.getLowerBounds(), function.getUpperBounds());
+		return new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT, FDR_WEIGHT,
+				NUMBER_PARTICLES, NUMBER_ITERATIONS, maximumVelocity, funcConf);
+	}
+
+	// The sphere, except that the failingEvaluation-th evaluation throws. Never throws if that is 0
+	private static class FailingSphere extends Functions.Sphere {
+		static final String MESSAGE = "Objective failed";
+
+		private final int failingEvaluation;
+		private final AtomicInteger evaluations = new AtomicInteger();
+
+		FailingSphere(int dimensions, int failingEvaluation) {
+			super(dimensions);
+			this.failingEvaluation = failingEvaluation;
+		}
+
+		@Override
+		public double function(double[] arguments, int offset) {
+			count();
+			return super.function(arguments, offset);
+		}
+
+		@Override
+		public Double function(List<Double> arguments) {
+			count();
+			return super.function(arguments);
+		}
+
+		private void count() {
+			if (evaluations.incrementAndGet() == failingEvaluation) {
+				throw new IllegalStateException(MESSAGE);
+			}
+		}
+	}
+}
@@ -1,19 +1,20 @@
 package swarm.pso.test;
 
 import java.awt.Rectangle;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
 import swarm.pso.logging.Logging;
 import swarm.pso.model.PSOFunction;
+import swarm.pso.service.AutoTuner;
+import swarm.pso.service.IterationPublisher;
 import swarm.pso.service.ParticleParallelOptimization;
+import swarm.pso.service.SwarmOptimization;
 import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
 import swarm.pso.structures.config.FunctionConfiguration;
 import swarm.pso.structures.config.SwarmConfiguration;
@@ -34,6 +35,11 @@ public class MainDriver {
 	
 	public static final long SEED = 7100555322108534535L;
 	public static final boolean USE_SEED = false;
+	public static final boolean AUTO_TUNE = false; // Time a few iterations to choose the optimizer and thread count,
+													// otherwise use one thread per processor. Never with USE_SEED,
+													// since timings would make a seeded run differ from one to the next
+	public static final boolean RECORD_METRICS = false; // Time each phase of the run and print where the time went
+	public static final long PAINT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(30); // Shortest run time between animation frames
 	
 	public static void main(String[] args) throws IllegalArgumentException {
 		PSOFunction<Double> function; //Holds the target optimization function
@@ -118,14 +124,25 @@ public class MainDriver {
 		
 		// set up the logging for writing to file and for animation
 		Logging log = new Logging(concurrentConfig);
+		if (RECORD_METRICS) {
+			log.enableMetrics();
+		}
+		
+		//initialize the optimization class with our configurations
+		SwarmOptimization pso;
+		if (AUTO_TUNE && !USE_SEED) {
+			AutoTuner.Tuning tuning = new AutoTuner(swarmConf).tune();
+			System.out.println(tuning);
+			pso = tuning.createOptimization(rand, log);
+		}
+		else {
+			pso = new ParticleParallelOptimization(concurrentConfig, rand, log);
+		}
 		
 		// if update delay is larger than 0, bring up the animation window
 		if (animationTimeout > 0) {
-			setupLogPainter(log, concurrentConfig);
+			setupLogPainter(pso, log, concurrentConfig);
 		}
-		
-		//initialize the optimization class with our configurations
-		ParticleParallelOptimization pso = new ParticleParallelOptimization(concurrentConfig, rand, log);
 		List<Double> solution;
 		
 		if (animationTimeout > 0) 
@@ -136,17 +153,24 @@ public class MainDriver {
 			solution = pso.optimize();
 
 		//write best positions, errors, and times to mainResults_bestposition.txt, mainResults_errorvals.txt,
-		//and mainResults_times.txt
+		//and mainResults_times.txt, the tuner's decision to mainResults_tuning.txt and metrics to mainResults_metrics.txt
 		log.writeToFile("mainResults_");
 		
-		//print solution array to screen, followed by the minimum value
+		//print solution array to screen, followed by the minimum value and the number of function evaluations
 		System.out.println(solution);
-		System.out.println(function.function(solution));
+		System.out.println(pso.getBestValue());
+		System.out.println(pso.getEvaluationCount() + " evaluations");
+		if (RECORD_METRICS) {
+			System.out.print(log.getMetrics().summary());
+		}
 	}
 	
-	private static void setupLogPainter(final Logging log, final SwarmConfiguration config) {
-		//initialize a component to paint the function and the current particle positions
-		final LogPainter lp = new LogPainter(log, config);
+	private static void setupLogPainter(SwarmOptimization pso, Logging log, SwarmConfiguration config) {
+		//initialize a component to paint the function and the particle positions, at most every PAINT_INTERVAL ns
+		final LogPainter lp = new LogPainter(config);
+		IterationPublisher publisher = new IterationPublisher(log, 1, PAINT_INTERVAL, true, 1);
+		pso.addIterationListener(publisher);
+		publisher.subscribe(lp);
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
@@ -164,18 +188,5 @@ public class MainDriver {
 				frame.setVisible(true);
 			}
 		});
-		
-		//Create a timer to refresh the panel every 30 ms
-		final Timer timer = new Timer(30, null);
-		timer.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(ActionEvent e) {
-				lp.repaint();
-				if (!lp.getParent().isVisible()) {
-					timer.stop();
-				}
-			}
-		});
-		timer.start();
 	}
 }
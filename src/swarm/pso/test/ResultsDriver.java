@@ -126,10 +126,10 @@ public class ResultsDriver {
 			System.out.println(seed);
 			
 			System.out.println(solution1);
-			System.out.println(function.function(solution1));
+			System.out.println(pso1.getBestValue());
 			
 			System.out.println(solution2);
-			System.out.println(function.function(solution2));
+			System.out.println(pso2.getBestValue());
 		}
 	}
 }
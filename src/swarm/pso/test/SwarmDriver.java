@@ -1,20 +1,20 @@
 package swarm.pso.test;
 
 import java.awt.Rectangle;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
 import swarm.pso.logging.Logging;
 import swarm.pso.model.PSOFunction;
+import swarm.pso.service.AutoTuner;
+import swarm.pso.service.IterationPublisher;
 import swarm.pso.service.ParticleParallelOptimization;
 import swarm.pso.service.SequentialOptimization;
+import swarm.pso.service.SwarmOptimization;
 import swarm.pso.structures.config.ConcurrentSwarmConfiguration;
 import swarm.pso.structures.config.FunctionConfiguration;
 import swarm.pso.structures.config.SwarmConfiguration;
@@ -105,7 +105,9 @@ public class SwarmDriver {
 		SwarmConfiguration swarmConf = new SwarmConfiguration(INITIAL_INERTIA, FINAL_INERTIA, SELF_WEIGHT, BEST_WEIGHT,
 				FDR_WEIGHT,  numParticles, numIterations, maximumVelocity, funcConf);
 		
-		ConcurrentSwarmConfiguration concurrentConfig = new ConcurrentSwarmConfiguration(swarmConf, Runtime.getRuntime().availableProcessors()-1);
+		// Compare against the fastest parallel setup the tuner finds, even where it would rather run sequentially
+		AutoTuner.Tuning tuning = new AutoTuner(swarmConf).tune();
+		ConcurrentSwarmConfiguration concurrentConfig = tuning.getConcurrentConfiguration();
 		Random rand1;
 		Random rand2;
 		long seed;
@@ -120,12 +122,11 @@ public class SwarmDriver {
 		
 		Logging log1 = new Logging(swarmConf);
 		Logging log2 = new Logging(concurrentConfig);
-
-		if (animationTimeout > 0) {
-			setupLogPainter(log1, swarmConf);
-		}
 		
 		SequentialOptimization pso1 = new SequentialOptimization(swarmConf, rand1, log1);
+		if (animationTimeout > 0) {
+			setupLogPainter(pso1, log1, swarmConf);
+		}
 		List<Double> solution1;
 		
 		if (animationTimeout > 0) 
@@ -139,16 +140,20 @@ public class SwarmDriver {
 		log1.writeToFile("SeqFDR");
 		log2.writeToFile("ConFDR");
 		System.out.println(seed);
+		System.out.println(tuning);
 		
 		System.out.println(solution1);
-		System.out.println(function.function(solution1));
+		System.out.println(pso1.getBestValue());
 		
 		System.out.println(solution2);
-		System.out.println(function.function(solution2));
+		System.out.println(pso2.getBestValue());
 	}
 
-	private static void setupLogPainter(final Logging log, final SwarmConfiguration config) {
-		final LogPainter lp = new LogPainter(log, config);
+	private static void setupLogPainter(SwarmOptimization pso, Logging log, SwarmConfiguration config) {
+		final LogPainter lp = new LogPainter(config);
+		IterationPublisher publisher = new IterationPublisher(log, 1, MainDriver.PAINT_INTERVAL, true, 1);
+		pso.addIterationListener(publisher);
+		publisher.subscribe(lp);
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
@@ -166,16 +171,5 @@ public class SwarmDriver {
 				frame.setVisible(true);
 			}
 		});
-		final Timer timer = new Timer(30, null);
-		timer.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(ActionEvent e) {
-				lp.repaint();
-				if (!lp.getParent().isVisible()) {
-					timer.stop();
-				}
-			}
-		});
-		timer.start();
 	}
 }
@@ -4,28 +4,32 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
-import swarm.pso.logging.Logging;
+import swarm.pso.service.ReactiveStreams;
+import swarm.pso.service.IterationSnapshot;
 import swarm.pso.structures.config.SwarmConfiguration;
 
+//Paints the particles of the latest snapshot it was sent over the function. Subscribe it to an IterationPublisher
+//with particle positions: it asks for the next snapshot once it has painted the last, so it never falls behind the run
 @SuppressWarnings("serial")
-public class LogPainter extends JLabel {
+public class LogPainter extends JLabel implements ReactiveStreams.Subscriber<IterationSnapshot> {
 	public static final Color COLOR = Color.RED;
 	public static final int RADIUS = 2;
 	public static final int WIDTH = 500;
 	public static final int HEIGHT = 500;
 
-	private final Logging log;
 	private final SwarmConfiguration config;
 	private final Image img;
 	
-	public LogPainter(Logging log, SwarmConfiguration config) {
-		this.log = log;
+	private ReactiveStreams.Subscription subscription;
+	private volatile IterationSnapshot latest; // The snapshot to paint, null until the first arrives
+	private boolean requested = false; // Whether the next snapshot has been asked for, only used on the Swing thread
+	
+	public LogPainter(SwarmConfiguration config) {
 		this.config = config;
 		
 		img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
@@ -36,18 +40,15 @@ public class LogPainter extends JLabel {
 		double minVal = values[0][0];
 		
 		// samples values of the function over the domain
+		double[] position = new double[config.getDimensions()];
 		for (int x = 0; x < WIDTH; x++) {
 			double xpos = x * (config.getUpperBounds().get(0)-config.getLowerBounds().get(0)) / WIDTH + config.getLowerBounds().get(0);
 			for (int y = 0; y < HEIGHT; y++) {
 				double ypos = (HEIGHT-y-1) * (config.getUpperBounds().get(1)-config.getLowerBounds().get(1)) / HEIGHT + config.getLowerBounds().get(1);
-				List<Double> position = new ArrayList<Double>();
-				position.add(xpos);
-				position.add(ypos);
-				for (int d = 2; d < config.getDimensions(); d++) {
-					position.add(0.0);
-				}
+				position[0] = xpos;
+				position[1] = ypos;
 				
-				values[x][y] = config.function(position);
+				values[x][y] = config.function(position, 0);
 				
 				maxVal = Math.max(maxVal, values[x][y]);
 				minVal = Math.min(minVal, values[x][y]);
@@ -72,17 +73,56 @@ public class LogPainter extends JLabel {
 		super.paintComponent(g);
 		
 		g.setColor(COLOR);
-		if (log.getLatestIteration() >= 0) {
+		IterationSnapshot snapshot = latest;
+		if (snapshot != null && snapshot.hasParticlePositions()) {
+			double[] positions = snapshot.getParticlePositions();
+			int dimensions = config.getDimensions();
 			for (int i = 0; i < config.getNumParticles(); i++) {
-				List<Double> position = log.getParticlePosition(log.getLatestIteration(), i);
-				paintPoint(g, position);
+				paintPoint(g, positions[i * dimensions], positions[i * dimensions + 1]);
 			}
 		}
+		if (subscription != null && !requested) {
+			requested = true;
+			subscription.request(1);
+		}
+	}
+	
+	@Override
+	public void onSubscribe(final ReactiveStreams.Subscription subscription) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				LogPainter.this.subscription = subscription;
+				repaint();
+			}
+		});
+	}
+	
+	@Override
+	public void onNext(IterationSnapshot snapshot) {
+		latest = snapshot;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				requested = false; // Ask for the next one once this one is painted
+				repaint();
+			}
+		});
+	}
+	
+	@Override
+	public void onError(Throwable throwable) {
+		throwable.printStackTrace();
+	}
+	
+	@Override
+	public void onComplete() {
+		// The last snapshot stays on screen
 	}
 	
-	private void paintPoint(Graphics g, List<Double> point) {
-		int xPos = (int)(WIDTH * (point.get(0)-config.getLowerBounds().get(0))/(config.getUpperBounds().get(0)-config.getLowerBounds().get(0)));
-		int yPos = (int)(HEIGHT * (1-(point.get(1)-config.getLowerBounds().get(1))/(config.getUpperBounds().get(1)-config.getLowerBounds().get(1))));
+	private void paintPoint(Graphics g, double x, double y) {
+		int xPos = (int)(WIDTH * (x-config.getLowerBounds().get(0))/(config.getUpperBounds().get(0)-config.getLowerBounds().get(0)));
+		int yPos = (int)(HEIGHT * (1-(y-config.getLowerBounds().get(1))/(config.getUpperBounds().get(1)-config.getLowerBounds().get(1))));
 		g.fillOval(xPos-RADIUS, yPos-RADIUS, 2*RADIUS, 2*RADIUS);
 	}
 }